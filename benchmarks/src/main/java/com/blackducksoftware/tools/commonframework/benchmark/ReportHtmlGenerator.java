@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.benchmark;
+
+/**
+ * Generates synthetic Protex 6 ad-hoc report HTML, laid out like the reports
+ * Protex produces (see src/test/resources/savedreports/protex6), with any
+ * number of rows.
+ *
+ * A conforming section has the columns of the Code Matches Pending
+ * Identification section. Component, version, license and usage values are
+ * drawn from small sets, as they are in real reports; file paths are
+ * distinct. A non-conforming section is a list of "Label: value" rows, like
+ * the Summary section.
+ */
+public class ReportHtmlGenerator {
+    /** The title of the generated conforming section. */
+    public static final String CONFORMING_SECTION_TITLE = "Code Matches Pending Identification - Precision";
+
+    /** The column headers of the generated conforming section. */
+    public static final String[] CONFORMING_COLUMNS = { "File", "Size",
+	    "File Line", "Total Lines", "Component", "Version", "License",
+	    "Usage", "%", "Matched File", "Matched File Line", "File Comment",
+	    "Component Comment" };
+
+    private static final String[] COMPONENTS = { "adhc", "cloudoss",
+	    "commons-lang", "guava", "jackson-core", "log4j", "openssl", "zlib" };
+    private static final String[] VERSIONS = { "", "1.0", "2.4.1", "3.2",
+	    "11.0.2" };
+    private static final String[] LICENSES = { "Unspecified",
+	    "Apache License 2.0", "BSD 3-clause \"New\" or \"Revised\" License",
+	    "GNU General Public License v2.0 only", "MIT License" };
+    private static final String[] USAGES = { "Snippet", "File",
+	    "Separate Work" };
+
+    private static final String TITLE_ROW = "<thead>\n<tr>\n"
+	    + "<th nowrap=\"nowrap\" colspan=\"%d\" valign=\"middle\">\n%s\n</th>\n"
+	    + "</tr>\n";
+
+    private ReportHtmlGenerator() {
+    }
+
+    /**
+     * Generate a report containing one section.
+     *
+     * @param rows
+     *            the number of rows
+     * @param conforming
+     *            true for a section with column headers, false for a
+     *            "Label: value" section
+     * @return the report HTML
+     */
+    public static String generateReport(int rows, boolean conforming) {
+	StringBuilder html = new StringBuilder(conforming ? rows * 600
+		: rows * 120);
+	html.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD HTML 4.01 Transitional//EN\">\n");
+	html.append("<html>\n<head><title>Synthetic report</title></head>\n<body>\n");
+	if (conforming) {
+	    appendConformingSection(html, rows);
+	} else {
+	    appendNonConformingSection(html, rows);
+	}
+	html.append("</body>\n</html>\n");
+	return html.toString();
+    }
+
+    private static void appendConformingSection(StringBuilder html, int rows) {
+	html.append("<table border='0' cellspacing='0' cellpadding='0' class='reportTable'>\n");
+	html.append(String.format(TITLE_ROW, CONFORMING_COLUMNS.length,
+		CONFORMING_SECTION_TITLE));
+	html.append("<tr style=\"font-size: 1.10em;\">\n");
+	for (String column : CONFORMING_COLUMNS) {
+	    html.append("<th nowrap=\"nowrap\">").append(column)
+		    .append("</th>\n");
+	}
+	html.append("</tr>\n</thead>\n<tbody>\n");
+
+	for (int row = 0; row < rows; row++) {
+	    html.append((row % 2 == 0) ? "<tr >\n" : "<tr bgcolor=\"#F5F5F5\">\n");
+	    appendCell(html, "src/main/java/com/example/module" + (row % 97)
+		    + "/Source" + row + ".java");
+	    appendCell(html, String.valueOf(1000 + (row % 50000)));
+	    appendCell(html, String.valueOf(1 + (row % 400)));
+	    appendCell(html, String.valueOf(400 + (row % 600)));
+	    appendCell(html, COMPONENTS[row % COMPONENTS.length]);
+	    appendCell(html, VERSIONS[row % VERSIONS.length]);
+	    appendCell(html, LICENSES[row % LICENSES.length]);
+	    appendCell(html, USAGES[row % USAGES.length]);
+	    appendCell(html, (row % 100) + "%");
+	    appendCell(html, "archive-" + (row % 31) + ".tgz/src/match/Match"
+		    + row + ".java");
+	    appendCell(html, String.valueOf(1 + (row % 300)));
+	    appendCell(html, "");
+	    appendCell(html, (row % 10 == 0) ? "Reviewed &amp; approved" : "");
+	    html.append("</tr>\n");
+	}
+	html.append("</tbody>\n</table>\n");
+    }
+
+    private static void appendNonConformingSection(StringBuilder html,
+	    int rows) {
+	html.append("<table border='0' cellspacing='0' cellpadding='0' class='reportTable'>\n");
+	html.append(String.format(TITLE_ROW, 2, "Summary"));
+	html.append("</thead>\n<tbody>\n");
+	for (int row = 0; row < rows; row++) {
+	    html.append("<tr >\n");
+	    appendCell(html, "Label " + row + ":");
+	    appendCell(html, "Value " + row);
+	    html.append("</tr>\n");
+	}
+	html.append("</tbody>\n</table>\n");
+    }
+
+    private static void appendCell(StringBuilder html, String value) {
+	html.append("    <td >\n").append(value).append("\n</td>\n");
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.benchmark;
+
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blackducksoftware.tools.commonframework.connector.protex.report.AdHocParserProtex6;
+import com.blackducksoftware.tools.commonframework.connector.protex.report.ProtexReportHTMLProcessor;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.AdHocElement;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.HocElement;
+
+/**
+ * Report parsing benchmarks for the Document based path: the whole report,
+ * and parseRows on an already parsed Document. A Document of a million rows
+ * does not fit in the fork's heap, so these stop at 100000 rows; the
+ * streaming path is benchmarked up to a million rows by
+ * StreamingParsingBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class ReportParsingBenchmark {
+
+    /** The number of rows in the report section. */
+    @Param({ "10000", "100000" })
+    public int rows;
+
+    /** Whether the section has column headers (or is "Label: value" rows). */
+    @Param({ "true", "false" })
+    public boolean conforming;
+
+    private String html;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+	html = ReportHtmlGenerator.generateReport(rows, conforming);
+    }
+
+    /**
+     * The report, parsed into a Document. Only parseRows uses it, so the
+     * other benchmark does not carry the Document's heap.
+     */
+    @State(Scope.Benchmark)
+    public static class ParsedReport {
+	private Document doc;
+
+	@Setup(Level.Trial)
+	public void setUp(ReportParsingBenchmark benchmark) {
+	    // Wrapped the same way ProtexReportHTMLProcessor wraps it
+	    doc = Jsoup.parseBodyFragment("<tbody><table class='reportTable'>"
+		    + benchmark.html + "</table></tbody>");
+	}
+    }
+
+    /**
+     * Read, parse (into a Document) and extract the rows of the whole report.
+     */
+    @Benchmark
+    public List<AdHocElement> getRowsFromBuffer(RowCounter counter)
+	    throws Exception {
+	List<AdHocElement> parsedRows = ProtexReportHTMLProcessor
+		.getRowsFromBuffer(null, false, newReader(),
+			AdHocElement.class);
+	counter.rows += parsedRows.size();
+	return parsedRows;
+    }
+
+    /**
+     * Extract the rows from an already parsed Document.
+     */
+    @Benchmark
+    public List<AdHocElement> parseRows(ParsedReport report,
+	    RowCounter counter) throws Exception {
+	AdHocParserProtex6<AdHocElement> parser = new AdHocParserProtex6<AdHocElement>();
+	HocElement header = parser.parseHeadersFromDoc(report.doc, 0);
+	List<AdHocElement> parsedRows = parser.parseRows(report.doc, header,
+		false, AdHocElement.class, 0);
+	counter.rows += parsedRows.size();
+	return parsedRows;
+    }
+
+    private LineNumberReader newReader() {
+	return new LineNumberReader(new StringReader(html));
+    }
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.benchmark;
+
+import java.io.File;
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blackducksoftware.tools.commonframework.connector.protex.report.ProtexReportHTMLProcessor;
+import com.blackducksoftware.tools.commonframework.connector.protex.report.ReportRowHandler;
+import com.blackducksoftware.tools.commonframework.connector.protex.report.SheetSectionWriter;
+import com.blackducksoftware.tools.commonframework.core.config.ConfigurationManager;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.AdHocElement;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.model.TemplateSheet;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.template.TemplateReader;
+import com.blackducksoftware.tools.commonframework.test.TestProtexConfigurationManager;
+
+/**
+ * Benchmarks writing parsed rows into a template sheet, the way
+ * ReportUtils.getReportSectionBySection populates each section, with the
+ * in-memory workbook and with a streaming (SXSSF) workbook.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class SheetWriterBenchmark {
+    private static final String DEFAULT_TEMPLATE_FILE = "src/test/resources/real_excel_template_comprehensive_protex6_v02.xlsx";
+
+    /** The template sheet with the columns of the generated section. */
+    private static final String SHEET_NAME = "Code_Matches_Pending_Identifica";
+
+    /** The number of rows in the report section. */
+    @Param({ "10000", "100000", "1000000" })
+    public int rows;
+
+    /**
+     * The streaming workbook row window; 0 writes the in-memory workbook.
+     */
+    @Param({ "0", "1000" })
+    public int streamingRowWindow;
+
+    private File templateFile;
+    private TemplateSheet templateSheet;
+    private List<AdHocElement> parsedRows;
+    private Workbook wb;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+	templateFile = new File(System.getProperty("template.file",
+		DEFAULT_TEMPLATE_FILE));
+	if (!templateFile.exists()) {
+	    throw new Exception("Template file not found: "
+		    + templateFile.getAbsolutePath()
+		    + "; set -Dtemplate.file=<path>");
+	}
+
+	Properties props = new Properties();
+	props.setProperty("protex.server.name", "http://localhost");
+	props.setProperty("protex.user.name", "benchmark");
+	props.setProperty("protex.password", "benchmark");
+	ConfigurationManager config = new TestProtexConfigurationManager(props);
+	TemplateReader templateReader = new TemplateReader(config);
+	TemplateReader.generateWorkBookFromFile(templateFile);
+	templateReader.populateTemplateMap();
+	for (TemplateSheet sheet : templateReader.getSheetMap().values()) {
+	    if (SHEET_NAME.equals(sheet.getSheetName())) {
+		templateSheet = sheet;
+	    }
+	}
+	if (templateSheet == null) {
+	    throw new Exception("Template has no sheet named " + SHEET_NAME);
+	}
+
+	final List<AdHocElement> rowList = new ArrayList<AdHocElement>(rows);
+	String html = ReportHtmlGenerator.generateReport(rows, true);
+	ProtexReportHTMLProcessor.processRowsFromBuffer(null, false,
+		new LineNumberReader(new StringReader(html)),
+		AdHocElement.class, new ReportRowHandler<AdHocElement>() {
+		    @Override
+		    public void handleRow(AdHocElement row) {
+			rowList.add(row);
+		    }
+		});
+	parsedRows = rowList;
+    }
+
+    @Setup(Level.Invocation)
+    public void createWorkbook() throws Exception {
+	wb = TemplateReader.generateWorkBookFromFile(templateFile);
+	if (streamingRowWindow > 0) {
+	    wb = new SXSSFWorkbook((XSSFWorkbook) wb, streamingRowWindow);
+	}
+    }
+
+    @TearDown(Level.Invocation)
+    public void disposeWorkbook() {
+	if (wb instanceof SXSSFWorkbook) {
+	    ((SXSSFWorkbook) wb).dispose();
+	}
+	wb = null;
+    }
+
+    /**
+     * Write all rows of the section into the template sheet.
+     */
+    @Benchmark
+    public Workbook writeSection(RowCounter counter) throws Exception {
+	SheetSectionWriter<AdHocElement> sheetWriter = new SheetSectionWriter<AdHocElement>(
+		templateSheet, wb);
+	for (AdHocElement row : parsedRows) {
+	    sheetWriter.handleRow(row);
+	}
+	counter.rows += sheetWriter.getRowCount();
+	return wb;
+    }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.benchmark;
+
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.blackducksoftware.tools.commonframework.connector.protex.report.ProtexReportHTMLProcessor;
+import com.blackducksoftware.tools.commonframework.connector.protex.report.ReportRowHandler;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.AdHocElement;
+
+/**
+ * Report parsing benchmark for the streaming path. Only the report HTML is
+ * held in memory, so this goes up to a million rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class StreamingParsingBenchmark {
+
+    /** The number of rows in the report section. */
+    @Param({ "10000", "100000", "1000000" })
+    public int rows;
+
+    /** Whether the section has column headers (or is "Label: value" rows). */
+    @Param({ "true", "false" })
+    public boolean conforming;
+
+    private String html;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+	html = ReportHtmlGenerator.generateReport(rows, conforming);
+    }
+
+    /**
+     * Read and parse the report with the streaming parser, without keeping
+     * the rows.
+     */
+    @Benchmark
+    public int processRowsFromBuffer(RowCounter counter, final Blackhole bh)
+	    throws Exception {
+	int rowCount = ProtexReportHTMLProcessor.processRowsFromBuffer(null,
+		false, newReader(), AdHocElement.class,
+		new ReportRowHandler<AdHocElement>() {
+		    @Override
+		    public void handleRow(AdHocElement row) {
+			bh.consume(row);
+		    }
+		});
+	counter.rows += rowCount;
+	return rowCount;
+    }
+
+    private LineNumberReader newReader() {
+	return new LineNumberReader(new StringReader(html));
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Creates instances of a class through its public no-argument constructor.
+ * The constructor is looked up once per class and shared, so creating an
+ * instance costs a single reflective call, not a constructor lookup plus the
+ * call. Used wherever the framework instantiates a caller-supplied class (one
+ * per report row, or per project).
+ *
+ * The factories are held in a ClassValue, so a factory does not keep its
+ * class (or the class loader that loaded it) from being unloaded.
+ *
+ * @param <T>
+ *            the type of the instances
+ */
+public final class InstanceFactory<T> {
+
+    /** The factory of each class, created when first asked for. */
+    private static final ClassValue<InstanceFactory<?>> factories = new ClassValue<InstanceFactory<?>>() {
+	@Override
+	protected InstanceFactory<?> computeValue(Class<?> instanceClass) {
+	    return createFactory(instanceClass);
+	}
+    };
+
+    private final Class<T> instanceClass;
+    private final Constructor<T> constructor;
+
+    /** Why the constructor could not be looked up, if it couldn't. */
+    private final String constructorError;
+
+    private InstanceFactory(Class<T> instanceClass) {
+	this.instanceClass = instanceClass;
+	Constructor<T> constructor = null;
+	String constructorError = null;
+	try {
+	    constructor = instanceClass.getConstructor();
+	} catch (SecurityException e) {
+	    constructorError = e.getMessage();
+	} catch (NoSuchMethodException e) {
+	    constructorError = e.getMessage();
+	}
+	this.constructor = constructor;
+	this.constructorError = constructorError;
+    }
+
+    private static <T> InstanceFactory<T> createFactory(Class<T> instanceClass) {
+	return new InstanceFactory<T>(instanceClass);
+    }
+
+    /**
+     * Get the factory for a class.
+     *
+     * @param instanceClass
+     *            the class to create instances of
+     * @return the factory
+     * @throws Exception
+     *             if the class does not have a public no-argument constructor
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> InstanceFactory<T> forClass(Class<T> instanceClass)
+	    throws Exception {
+	InstanceFactory<T> factory = (InstanceFactory<T>) factories
+		.get(instanceClass);
+	if (factory.constructor == null) {
+	    throw new Exception(factory.constructorError);
+	}
+	return factory;
+    }
+
+    /**
+     * Create a new instance of a class. Equivalent to
+     * forClass(instanceClass).newInstance().
+     *
+     * @param instanceClass
+     *            the class to create an instance of
+     * @return the new instance
+     * @throws Exception
+     */
+    public static <T> T newInstance(Class<T> instanceClass) throws Exception {
+	return forClass(instanceClass).newInstance();
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @return the new instance
+     * @throws Exception
+     *             if the constructor fails
+     */
+    public T newInstance() throws Exception {
+	try {
+	    return constructor.newInstance();
+	} catch (IllegalArgumentException e) {
+	    throw new Exception(e.getMessage());
+	} catch (InstantiationException e) {
+	    throw new Exception(e.getMessage());
+	} catch (IllegalAccessException e) {
+	    throw new Exception(e.getMessage());
+	} catch (InvocationTargetException e) {
+	    throw new Exception(e.getMessage());
+	}
+    }
+
+    /**
+     * Get the class this factory creates instances of.
+     *
+     * @return the class
+     */
+    public Class<T> getInstanceClass() {
+	return instanceClass;
+    }
+}
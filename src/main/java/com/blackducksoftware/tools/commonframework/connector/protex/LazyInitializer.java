@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex;
+
+/**
+ * Holds a value that is created on first use, such as an SDK API stub, which
+ * is expensive to build and may never be needed. The value is created at most
+ * once, even if several threads ask for it at the same time.
+ *
+ * If create() throws, nothing is held, and the next call to get() tries again.
+ *
+ * @param <T>
+ *            the type of the value
+ */
+public abstract class LazyInitializer<T> {
+
+    private volatile T value;
+
+    /**
+     * Get the value, creating it if this is the first call.
+     *
+     * @return the value
+     */
+    public T get() {
+	T result = value;
+	if (result == null) {
+	    synchronized (this) {
+		result = value;
+		if (result == null) {
+		    result = create();
+		    value = result;
+		}
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * Create the value. Called by the first call to get().
+     *
+     * @return the value, which must not be null
+     */
+    protected abstract T create();
+}
@@ -47,6 +47,12 @@ import com.blackducksoftware.tools.commonframework.core.config.server.ServerBean
 /**
  * Primary authenticator and validator for the Protex SDKs.
  *
+ * The API stubs are not built by the constructor, but by the first call to
+ * their getters. A stub that can't be built (the server's WSDL can't be
+ * fetched, for example) therefore fails with a runtime exception from its
+ * getter, not from the constructor; the next call to the getter tries again.
+ * Only the user API is built up front, when the credentials are validated.
+ *
  * @author Ari Kamen
  */
 @SuppressWarnings("restriction")
@@ -55,45 +61,110 @@ public class ProtexAPIWrapper extends APIWrapper {
     /** The log. */
     private Logger log = LoggerFactory.getLogger(this.getClass().getName());
 
+    // The API stubs are built on first use, so that a tool only pays for the
+    // APIs it actually uses
+
     /** The bom api. */
-    private BomApi bomApi;
+    private final LazyInitializer<BomApi> bomApi = new LazyInitializer<BomApi>() {
+	@Override
+	protected BomApi create() {
+	    return protexServer.getBomApi();
+	}
+    };
 
     /** The code tree api. */
-    private CodeTreeApi codeTreeApi;
+    private final LazyInitializer<CodeTreeApi> codeTreeApi = new LazyInitializer<CodeTreeApi>() {
+	@Override
+	protected CodeTreeApi create() {
+	    return protexServer.getCodeTreeApi();
+	}
+    };
 
     /** The identification api. */
-    private IdentificationApi identificationApi;
+    private final LazyInitializer<IdentificationApi> identificationApi = new LazyInitializer<IdentificationApi>() {
+	@Override
+	protected IdentificationApi create() {
+	    return protexServer.getIdentificationApi();
+	}
+    };
 
     /** The project api. */
-    private ProjectApi projectApi;
+    private final LazyInitializer<ProjectApi> projectApi = new LazyInitializer<ProjectApi>() {
+	@Override
+	protected ProjectApi create() {
+	    return protexServer.getProjectApi();
+	}
+    };
 
     /** The discovery api. */
-    private DiscoveryApi discoveryApi;
+    private final LazyInitializer<DiscoveryApi> discoveryApi = new LazyInitializer<DiscoveryApi>() {
+	@Override
+	protected DiscoveryApi create() {
+	    return protexServer.getDiscoveryApi();
+	}
+    };
 
     /** The report api. */
-    private ReportApi reportApi;
-
-    /** The standard api. */
-    private StandardComponentApi standardApi;
+    private final LazyInitializer<ReportApi> reportApi = new LazyInitializer<ReportApi>() {
+	@Override
+	protected ReportApi create() {
+	    return protexServer.getReportApi();
+	}
+    };
 
     /** The user api. */
-    private UserApi userApi;
+    private final LazyInitializer<UserApi> userApi = new LazyInitializer<UserApi>() {
+	@Override
+	protected UserApi create() {
+	    return protexServer.getUserApi();
+	}
+    };
 
     /** The license api. */
-    private LicenseApi licenseApi ;
+    private final LazyInitializer<LicenseApi> licenseApi = new LazyInitializer<LicenseApi>() {
+	@Override
+	protected LicenseApi create() {
+	    return protexServer.getLicenseApi();
+	}
+    };
 
     /** The standard component api. */
-    private StandardComponentApi standardComponentApi ;
+    private final LazyInitializer<StandardComponentApi> standardComponentApi = new LazyInitializer<StandardComponentApi>() {
+	@Override
+	protected StandardComponentApi create() {
+	    return protexServer.getStandardComponentApi();
+	}
+    };
 
     /** The role api. */
-    private RoleApi roleApi;
+    private final LazyInitializer<RoleApi> roleApi = new LazyInitializer<RoleApi>() {
+	@Override
+	protected RoleApi create() {
+	    return protexServer.getRoleApi();
+	}
+    };
 
     /** The component version api. */
-    private ComponentVersionApi componentVersionApi;
+    private final LazyInitializer<ComponentVersionApi> componentVersionApi = new LazyInitializer<ComponentVersionApi>() {
+	@Override
+	protected ComponentVersionApi create() {
+	    return protexServer.getComponentVersionApi();
+	}
+    };
 
-    private LocalComponentApi localComponentApi;
+    private final LazyInitializer<LocalComponentApi> localComponentApi = new LazyInitializer<LocalComponentApi>() {
+	@Override
+	protected LocalComponentApi create() {
+	    return protexServer.getLocalComponentApi();
+	}
+    };
     
-    private PolicyApi policyApi;
+    private final LazyInitializer<PolicyApi> policyApi = new LazyInitializer<PolicyApi>() {
+	@Override
+	protected PolicyApi create() {
+	    return protexServer.getPolicyApi();
+	}
+    };
 
     /** The protex server. */
     private ProtexServerProxyV6_3 protexServer;
@@ -101,6 +172,12 @@ public class ProtexAPIWrapper extends APIWrapper {
     /** The error message. */
     private String errorMessage;
 
+    /** The server the APIs connect to. */
+    private String server;
+
+    /** Whether the user's credentials have been validated. */
+    private boolean validated = false;
+
     /**
      * Creates a proxy object with the proper credentials Credentials keyed off
      * the server bean.
@@ -159,23 +236,12 @@ public class ProtexAPIWrapper extends APIWrapper {
 	try {
 	    protexServer = new ExtendedProxy(server, user, password,
 		    configManager.getChildElementCount());
+	    this.server = server;
 	    log.info("User Info: " + user);
 	    if (validate) {
 		validateCredentials(server);
+		validated = true;
 	    }
-	    bomApi = protexServer.getBomApi();
-	    codeTreeApi = protexServer.getCodeTreeApi();
-	    identificationApi = protexServer.getIdentificationApi();
-	    projectApi = protexServer.getProjectApi();
-	    discoveryApi = protexServer.getDiscoveryApi();
-	    reportApi = protexServer.getReportApi();
-	    standardApi = protexServer.getStandardComponentApi();
-	    userApi = protexServer.getUserApi();
-	    licenseApi = protexServer.getLicenseApi();
-	    policyApi = protexServer.getPolicyApi();
-	    standardComponentApi = protexServer.getStandardComponentApi();
-	    componentVersionApi = protexServer.getComponentVersionApi();
-	    localComponentApi = protexServer.getLocalComponentApi();
 
 	    // if (validate){
 	    // // Use ProtexServerProxyV6_3 validateCredentials() for Protex 7
@@ -217,7 +283,7 @@ public class ProtexAPIWrapper extends APIWrapper {
  
     private void validateCredentials(String serverUrl) throws Exception {
 	try {
-	    UserApi userAPI = protexServer.getUserApi();
+	    UserApi userAPI = getUserApi();
 	    boolean currentUserHasServerFileAccess = userAPI
 		    .getCurrentUserHasServerFileAccess();
 	    log.info("User has server file access: "
@@ -250,6 +316,21 @@ public class ProtexAPIWrapper extends APIWrapper {
 	}
     }
 
+    /**
+     * Validates the user's credentials, unless that has already been done.
+     * Used when a pooled wrapper that was created without validation is handed
+     * out to a caller that asked for validation.
+     *
+     * @throws Exception
+     *             if the credentials are not valid
+     */
+    public synchronized void ensureValidated() throws Exception {
+	if (!validated) {
+	    validateCredentials(server);
+	    validated = true;
+	}
+    }
+
     /**
      * Gets the error message.
      *
@@ -269,58 +350,58 @@ public class ProtexAPIWrapper extends APIWrapper {
     }
 
     public BomApi getBomApi() {
-	return bomApi;
+	return bomApi.get();
     }
 
     public CodeTreeApi getCodeTreeApi() {
-	return codeTreeApi;
+	return codeTreeApi.get();
     }
 
     public IdentificationApi getIdentificationApi() {
-	return identificationApi;
+	return identificationApi.get();
     }
 
     public ProjectApi getProjectApi() {
-	return projectApi;
+	return projectApi.get();
     }
 
     public DiscoveryApi getDiscoveryApi() {
-	return discoveryApi;
+	return discoveryApi.get();
     }
 
     public ReportApi getReportApi() {
-	return reportApi;
+	return reportApi.get();
     }
 
     public StandardComponentApi getStandardApi() {
-	return standardApi;
+	return getStandardComponentApi();
     }
 
     public UserApi getUserApi() {
-	return userApi;
+	return userApi.get();
     }
 
     public LicenseApi getLicenseApi() {
-	return licenseApi;
+	return licenseApi.get();
     }
 
     public StandardComponentApi getStandardComponentApi() {
-	return standardComponentApi;
+	return standardComponentApi.get();
     }
 
     public RoleApi getRoleApi() {
-	return roleApi;
+	return roleApi.get();
     }
 
     public ComponentVersionApi getComponentVersionApi() {
-	return componentVersionApi;
+	return componentVersionApi.get();
     }
 
     public LocalComponentApi getLocalComponentApi() {
-	return localComponentApi;
+	return localComponentApi.get();
     }
 
     public PolicyApi getPolicyApi() {
-	return policyApi;
+	return policyApi.get();
     }
 }
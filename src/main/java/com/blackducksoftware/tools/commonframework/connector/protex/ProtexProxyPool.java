@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.tools.commonframework.core.config.ConfigurationManager;
+import com.blackducksoftware.tools.commonframework.core.config.server.ServerBean;
+
+/**
+ * A bounded pool of ProtexAPIWrappers, keyed by server and user.
+ *
+ * Creating a ProtexAPIWrapper builds an SDK proxy and instruments a CXF
+ * service stub for each API, which is expensive compared to most SDK calls.
+ * The pool hands out wrappers whose stubs are ready to use, and takes them
+ * back when the caller is done, so the stubs (and the HTTP conduits and
+ * keep-alive connections behind them) are reused by the next caller.
+ *
+ * Each wrapper is used by one caller at a time. At most maxWrappersPerUser
+ * wrappers are created for a given server and user; once they are all in use,
+ * acquire() waits for one to be released. Typical use, by each worker thread:
+ *
+ * <pre>
+ * ProtexServerWrapper&lt;ProtexProjectPojo&gt; wrapper = new ProtexServerWrapper&lt;ProtexProjectPojo&gt;(
+ * 	bean, config, true, pool);
+ * try {
+ *     ...
+ * } finally {
+ *     wrapper.close();
+ * }
+ * </pre>
+ */
+public class ProtexProxyPool {
+
+    /** The log. */
+    private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+    private final int maxWrappersPerUser;
+
+    private final ConcurrentMap<PoolKey, UserPool> userPools = new ConcurrentHashMap<PoolKey, UserPool>();
+
+    /** Wrapper -> the pool it came from. */
+    private final ConcurrentMap<ProtexAPIWrapper, UserPool> leases = new ConcurrentHashMap<ProtexAPIWrapper, UserPool>();
+
+    /**
+     * Create a pool.
+     *
+     * @param maxWrappersPerUser
+     *            the maximum number of wrappers per server and user
+     */
+    public ProtexProxyPool(int maxWrappersPerUser) {
+	if (maxWrappersPerUser < 1) {
+	    throw new IllegalArgumentException(
+		    "maxWrappersPerUser must be at least 1");
+	}
+	this.maxWrappersPerUser = maxWrappersPerUser;
+    }
+
+    /**
+     * Acquire a wrapper for the given server and user, waiting for one to be
+     * released if all of them are in use. The wrapper must be returned with
+     * release() when the caller is done with it.
+     *
+     * @param bean
+     *            the server and user
+     * @param configManager
+     *            the configuration manager, used when a new wrapper is created
+     * @param validate
+     *            whether the user's credentials must have been validated
+     * @return the wrapper
+     * @throws Exception
+     *             if a new wrapper can't be created, the credentials are not
+     *             valid, or the thread is interrupted while waiting
+     */
+    public ProtexAPIWrapper acquire(ServerBean bean,
+	    ConfigurationManager configManager, boolean validate)
+	    throws Exception {
+	PoolKey key = new PoolKey(bean.getServerName(), bean.getUserName(),
+		bean.getPassword(), configManager.getChildElementCount());
+	UserPool userPool = userPools.get(key);
+	if (userPool == null) {
+	    UserPool newPool = new UserPool(maxWrappersPerUser);
+	    userPool = userPools.putIfAbsent(key, newPool);
+	    if (userPool == null) {
+		userPool = newPool;
+	    }
+	}
+
+	userPool.permits.acquire();
+	ProtexAPIWrapper wrapper = null;
+	try {
+	    wrapper = userPool.idle.poll();
+	    if (wrapper == null) {
+		log.debug("Creating pooled API wrapper for user "
+			+ bean.getUserName() + " on " + bean.getServerName());
+		wrapper = createWrapper(bean, configManager, validate);
+	    } else if (validate) {
+		wrapper.ensureValidated();
+	    }
+	} catch (Exception e) {
+	    if (wrapper != null) {
+		// Still usable by callers that don't validate
+		userPool.idle.add(wrapper);
+	    }
+	    userPool.permits.release();
+	    throw e;
+	}
+	leases.put(wrapper, userPool);
+	return wrapper;
+    }
+
+    /**
+     * Return a wrapper to the pool.
+     *
+     * @param wrapper
+     *            a wrapper obtained from acquire()
+     */
+    public void release(ProtexAPIWrapper wrapper) {
+	UserPool userPool = leases.remove(wrapper);
+	if (userPool == null) {
+	    throw new IllegalArgumentException(
+		    "The wrapper was not acquired from this pool");
+	}
+	userPool.idle.add(wrapper);
+	userPool.permits.release();
+    }
+
+    /**
+     * Create a wrapper for the pool.
+     *
+     * @param bean
+     *            the server and user
+     * @param configManager
+     *            the configuration manager
+     * @param validate
+     *            whether to validate the user's credentials
+     * @return the new wrapper
+     * @throws Exception
+     *             if the wrapper can't be created, or the credentials are not
+     *             valid
+     */
+    protected ProtexAPIWrapper createWrapper(ServerBean bean,
+	    ConfigurationManager configManager, boolean validate)
+	    throws Exception {
+	return new ProtexAPIWrapper(bean, configManager, validate);
+    }
+
+    /**
+     * Get the number of wrappers that are currently acquired.
+     *
+     * @return the number of wrappers in use
+     */
+    public int getActiveCount() {
+	return leases.size();
+    }
+
+    /** The wrappers for one server and user. */
+    private static class UserPool {
+	private final Semaphore permits;
+	private final ConcurrentLinkedQueue<ProtexAPIWrapper> idle = new ConcurrentLinkedQueue<ProtexAPIWrapper>();
+
+	private UserPool(int maxWrappers) {
+	    permits = new Semaphore(maxWrappers, true);
+	}
+    }
+
+    /**
+     * Identifies the wrappers that are interchangeable. The password is part of
+     * the key so that a wrong password can't get hold of a wrapper created
+     * with the right one.
+     */
+    private static class PoolKey {
+	private final String server;
+	private final String user;
+	private final String password;
+	private final long maxChildElements;
+
+	private PoolKey(String server, String user, String password,
+		long maxChildElements) {
+	    this.server = server;
+	    this.user = user;
+	    this.password = password;
+	    this.maxChildElements = maxChildElements;
+	}
+
+	@Override
+	public int hashCode() {
+	    int result = 31 + (server == null ? 0 : server.hashCode());
+	    result = 31 * result + (user == null ? 0 : user.hashCode());
+	    result = 31 * result + (password == null ? 0 : password.hashCode());
+	    return 31 * result
+		    + (int) (maxChildElements ^ (maxChildElements >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (this == obj) {
+		return true;
+	    }
+	    if (!(obj instanceof PoolKey)) {
+		return false;
+	    }
+	    PoolKey other = (PoolKey) obj;
+	    return equal(server, other.server) && equal(user, other.user)
+		    && equal(password, other.password)
+		    && maxChildElements == other.maxChildElements;
+	}
+
+	private static boolean equal(String s1, String s2) {
+	    return s1 == null ? s2 == null : s1.equals(s2);
+	}
+    }
+}
@@ -17,8 +17,6 @@
  *******************************************************************************/
 package com.blackducksoftware.tools.commonframework.connector.protex;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -61,6 +59,9 @@ public class ProtexServerWrapper<T extends ProtexProjectPojo> implements
     // This holds the connection information 
     private ServerBean serverBean;
 
+    /** The pool the api wrapper was acquired from, if any. */
+    private ProtexProxyPool proxyPool;
+
     public ProtexServerWrapper(ServerBean bean, ConfigurationManager manager,
 	    boolean validate) throws Exception {
 	serverBean = bean;
@@ -68,6 +69,36 @@ public class ProtexServerWrapper<T extends ProtexProjectPojo> implements
 	apiWrapper = new ProtexAPIWrapper(bean, manager, validate);
     }
 
+    /**
+     * Creates a server wrapper that uses an api wrapper from the given pool,
+     * rather than creating its own. Call close() when done with the server
+     * wrapper, to return the api wrapper to the pool.
+     *
+     * @param bean
+     * @param manager
+     * @param validate
+     * @param proxyPool
+     * @throws Exception
+     */
+    public ProtexServerWrapper(ServerBean bean, ConfigurationManager manager,
+	    boolean validate, ProtexProxyPool proxyPool) throws Exception {
+	serverBean = bean;
+	configManager = manager;
+	this.proxyPool = proxyPool;
+	apiWrapper = proxyPool.acquire(bean, manager, validate);
+    }
+
+    /**
+     * Returns the api wrapper to the pool it came from, if any. The server
+     * wrapper must not be used afterwards.
+     */
+    public void close() {
+	if (proxyPool != null && apiWrapper != null) {
+	    proxyPool.release(apiWrapper);
+	    apiWrapper = null;
+	}
+    }
+
     /**
      * Returns a pojo based on name. Throws exception if name does not produce
      * anything
@@ -178,12 +209,14 @@ public class ProtexServerWrapper<T extends ProtexProjectPojo> implements
 	    List<ProjectInfo> project_list_info = projectAPI
 		    .getProjectsByUser(userName);
 
+	    InstanceFactory<T> projectFactory = InstanceFactory
+		    .forClass(theProjectClass);
 	    for (ProjectInfo project : project_list_info) {
 		if (project != null) {
 		    String projName = project.getName();
 		    String projID = project.getProjectId();
 		   
-		    T projPojo = (T) generateNewInstance(theProjectClass);
+		    T projPojo = projectFactory.newInstance();
 
 		    // Set the basic
 		    ((ProtexProjectPojo) projPojo).setProjectKey(projID);
@@ -277,32 +310,4 @@ public class ProtexServerWrapper<T extends ProtexProjectPojo> implements
     public ConfigurationManager getConfigManager() {
 	return this.configManager;
     }
-
-    @SuppressWarnings("unchecked")
-    private T generateNewInstance(Class<?> theProjectClass) throws Exception {
-	T pojo = null;
-	Constructor<?> constructor = null;
-	;
-	try {
-	    constructor = theProjectClass.getConstructor();
-	} catch (SecurityException e) {
-	    throw new Exception(e.getMessage());
-	} catch (NoSuchMethodException e) {
-	    throw new Exception(e.getMessage());
-	}
-
-	try {
-	    pojo = (T) constructor.newInstance();
-	} catch (IllegalArgumentException e) {
-	    throw new Exception(e.getMessage());
-	} catch (InstantiationException e) {
-	    throw new Exception(e.getMessage());
-	} catch (IllegalAccessException e) {
-	    throw new Exception(e.getMessage());
-	} catch (InvocationTargetException e) {
-	    throw new Exception(e.getMessage());
-	}
-
-	return pojo;
-    }
 }
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex.identification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.sdk.fault.SdkFault;
+import com.blackducksoftware.sdk.protex.project.codetree.CodeTreeNode;
+import com.blackducksoftware.sdk.protex.project.codetree.PartialCodeTree;
+import com.blackducksoftware.sdk.protex.project.codetree.discovery.CodeMatchDiscovery;
+
+/**
+ * Fetches the code match discoveries for a list of files in chunks sized to
+ * fit the CXF maxChildElements limit (ConfigurationManager
+ * getChildElementCount()) that the SDK proxy is configured with.
+ *
+ * The limit applies to the response, which holds a varying number of
+ * discoveries per file, so the chunk size is adaptive: after each response it
+ * is set so that a chunk would fill about TARGET_FILL of the limit at the
+ * number of discoveries per file just seen. When CXF rejects a response as too
+ * large anyway, the chunk is split in half and each half is retried, and the
+ * chunk size shrinks accordingly. The chunks of a request are fetched in
+ * parallel.
+ */
+public class CodeMatchDiscoveryFetcher {
+
+    /** The share of the child element limit to aim for. */
+    private static final double TARGET_FILL = 0.8;
+
+    private static final long IDLE_THREAD_SECONDS = 60;
+
+    /** Part of the message of CXF's exception when the limit is exceeded. */
+    private static final String CHILD_ELEMENTS_ERROR = "child elements";
+
+    private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+    private final ProtexIdUtils protexUtils;
+    private final long maxChildElements;
+    private final ExecutorService executor;
+
+    /** The number of files per request. */
+    private volatile int chunkSize;
+
+    /**
+     * Create a fetcher.
+     *
+     * @param protexUtils
+     *            the ProtexIdUtils for the project
+     * @param maxChildElements
+     *            the CXF maxChildElements limit
+     * @param threads
+     *            the number of chunks to fetch at the same time
+     */
+    public CodeMatchDiscoveryFetcher(ProtexIdUtils protexUtils,
+	    long maxChildElements, int threads) {
+	this.protexUtils = protexUtils;
+	this.maxChildElements = Math.max(1, maxChildElements);
+	chunkSize = getTargetElementCount();
+	// The fetcher has no close(), so idle threads are let go, and the
+	// threads don't keep the JVM alive
+	int poolSize = Math.max(1, threads);
+	ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize,
+		IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+		new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+		    @Override
+		    public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r,
+				"CodeMatchDiscoveryFetcher");
+			thread.setDaemon(true);
+			return thread;
+		    }
+		});
+	pool.allowCoreThreadTimeOut(true);
+	executor = pool;
+    }
+
+    /**
+     * Get the code match discoveries for a list of files.
+     *
+     * @param path
+     *            the path of the directory the files are in
+     * @param files
+     *            the file nodes
+     * @return the discoveries, in file order
+     * @throws SdkFault
+     */
+    public List<CodeMatchDiscovery> fetch(final String path,
+	    List<CodeTreeNode> files) throws SdkFault {
+	int size = chunkSize;
+	if (files.size() <= size) {
+	    return fetchChunk(path, files);
+	}
+
+	List<Future<List<CodeMatchDiscovery>>> futures = new ArrayList<Future<List<CodeMatchDiscovery>>>();
+	try {
+	    for (int start = 0; start < files.size(); start += size) {
+		final List<CodeTreeNode> chunk = files.subList(start,
+			Math.min(start + size, files.size()));
+		futures.add(executor
+			.submit(new Callable<List<CodeMatchDiscovery>>() {
+			    @Override
+			    public List<CodeMatchDiscovery> call()
+				    throws SdkFault {
+				return fetchChunk(path, chunk);
+			    }
+			}));
+	    }
+
+	    List<CodeMatchDiscovery> discoveries = new ArrayList<CodeMatchDiscovery>();
+	    for (Future<List<CodeMatchDiscovery>> future : futures) {
+		discoveries.addAll(future.get());
+	    }
+	    return discoveries;
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new RuntimeException(
+		    "Interrupted while getting code match discoveries", e);
+	} catch (ExecutionException e) {
+	    Throwable cause = e.getCause();
+	    if (cause instanceof SdkFault) {
+		throw (SdkFault) cause;
+	    }
+	    if (cause instanceof RuntimeException) {
+		throw (RuntimeException) cause;
+	    }
+	    throw new RuntimeException(cause);
+	} finally {
+	    for (Future<List<CodeMatchDiscovery>> future : futures) {
+		future.cancel(true);
+	    }
+	}
+    }
+
+    /**
+     * Get the current number of files per request.
+     *
+     * @return the chunk size
+     */
+    public int getChunkSize() {
+	return chunkSize;
+    }
+
+    /**
+     * Fetch one chunk, splitting it if the response is too large.
+     */
+    private List<CodeMatchDiscovery> fetchChunk(String path,
+	    List<CodeTreeNode> files) throws SdkFault {
+	PartialCodeTree tree = new PartialCodeTree();
+	tree.setParentPath(path);
+	tree.getNodes().addAll(files);
+
+	List<CodeMatchDiscovery> discoveries;
+	try {
+	    discoveries = protexUtils.getCodeMatchDiscoveries(tree);
+	} catch (SdkFault e) {
+	    if (!isChildElementsError(e) || files.size() == 1) {
+		throw e;
+	    }
+	    return splitChunk(path, files);
+	} catch (RuntimeException e) {
+	    if (!isChildElementsError(e) || files.size() == 1) {
+		throw e;
+	    }
+	    return splitChunk(path, files);
+	}
+
+	if (!discoveries.isEmpty()) {
+	    // Aim for the target fill at this many discoveries per file
+	    long adjusted = (long) getTargetElementCount() * files.size()
+		    / discoveries.size();
+	    chunkSize = (int) Math.max(1,
+		    Math.min(adjusted, getTargetElementCount()));
+	}
+	return discoveries;
+    }
+
+    private List<CodeMatchDiscovery> splitChunk(String path,
+	    List<CodeTreeNode> files) throws SdkFault {
+	int half = files.size() / 2;
+	chunkSize = Math.max(1, Math.min(chunkSize, half));
+	log.info("Code match discoveries for " + files.size() + " files in "
+		+ path + " exceed the child element limit; retrying in chunks of "
+		+ half);
+	List<CodeMatchDiscovery> discoveries = new ArrayList<CodeMatchDiscovery>();
+	discoveries.addAll(fetchChunk(path, files.subList(0, half)));
+	discoveries.addAll(fetchChunk(path, files.subList(half, files.size())));
+	return discoveries;
+    }
+
+    private int getTargetElementCount() {
+	return (int) Math.max(1,
+		Math.min(Integer.MAX_VALUE, maxChildElements * TARGET_FILL));
+    }
+
+    private static boolean isChildElementsError(Throwable e) {
+	for (Throwable t = e; t != null; t = t.getCause()) {
+	    String message = t.getMessage();
+	    if (message != null
+		    && message.toLowerCase().contains(CHILD_ELEMENTS_ERROR)) {
+		return true;
+	    }
+	    if (t.getCause() == t) {
+		break;
+	    }
+	}
+	return false;
+    }
+}
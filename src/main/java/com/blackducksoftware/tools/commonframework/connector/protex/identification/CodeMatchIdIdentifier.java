@@ -34,11 +34,35 @@ public class CodeMatchIdIdentifier implements Identifier {
     private Logger log = LoggerFactory.getLogger(this.getClass().getName());
     private String programName;
     private ProtexIdUtils protexUtils;
+    private BomRefreshMode bomRefreshMode = BomRefreshMode.SYNCHRONOUS;
 
     public CodeMatchIdIdentifier(String programName) {
 	this.programName = programName;
     }
 
+    /**
+     * Set how the BOM is refreshed after each identification. The default,
+     * SYNCHRONOUS, makes each identification wait for a BOM refresh. With
+     * SKIP, identifications are much faster, but the BOM (and the pending ID
+     * counts) must be refreshed with ProtexIdUtils.refreshBom() or an
+     * IdentificationPipeline checkpoint.
+     *
+     * @param bomRefreshMode
+     *            the BOM refresh mode
+     */
+    public void setBomRefreshMode(BomRefreshMode bomRefreshMode) {
+	this.bomRefreshMode = bomRefreshMode;
+    }
+
+    /**
+     * Get how the BOM is refreshed after each identification.
+     *
+     * @return the BOM refresh mode
+     */
+    public BomRefreshMode getBomRefreshMode() {
+	return bomRefreshMode;
+    }
+
     @Override
     public void setProtexUtils(ProtexIdUtils protexUtils) {
 	this.protexUtils = protexUtils;
@@ -81,13 +105,14 @@ public class CodeMatchIdIdentifier implements Identifier {
 		.getInternalApiWrapper()
 		.getIdentificationApi()
 		.addCodeMatchIdentification(protexUtils.getProjectId(), path,
-			idRequest, BomRefreshMode.SYNCHRONOUS);
+			idRequest, bomRefreshMode);
     }
 
     @Override
     public boolean isFinalBomRefreshRequired() {
-	// Using this strategy, no need to refresh BOM at the end
-	return false;
+	// Using this strategy, no need to refresh BOM at the end, unless
+	// refreshes have been skipped
+	return bomRefreshMode != BomRefreshMode.SYNCHRONOUS;
     }
 
     @Override
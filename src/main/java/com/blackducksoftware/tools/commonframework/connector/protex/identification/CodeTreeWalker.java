@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex.identification;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.sdk.protex.project.codetree.CodeTreeNode;
+import com.blackducksoftware.sdk.protex.project.codetree.CodeTreeNodeType;
+import com.blackducksoftware.sdk.protex.project.codetree.CodeTreeNodeWithCount;
+import com.blackducksoftware.sdk.protex.project.codetree.PartialCodeTree;
+import com.blackducksoftware.sdk.protex.project.codetree.PartialCodeTreeWithCount;
+
+/**
+ * Walks a project's code tree looking for files with pending code match
+ * identifications, fetching directories concurrently.
+ *
+ * Each directory takes two round trips: one to list its contents, and one to
+ * get the pending ID count of every child. Children without pending IDs are
+ * skipped, so subtrees that have been fully identified are never listed. The
+ * directories are fetched on a bounded pool of worker threads; the files found
+ * are handed (in batches, through a bounded queue) to the thread that called
+ * walk(), which is the only thread that calls the PendingFileHandler. The
+ * handler therefore does not need to be thread safe.
+ */
+public class CodeTreeWalker {
+    private static final int BATCH_QUEUE_CAPACITY = 100;
+
+    private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+    private final ProtexIdUtils protexUtils;
+    private final int threads;
+    private final int batchSize;
+
+    /**
+     * Create a walker.
+     *
+     * @param protexUtils
+     *            the ProtexIdUtils for the project
+     * @param threads
+     *            the number of directories to fetch at the same time
+     * @param batchSize
+     *            the maximum number of files per PendingFileHandler call
+     */
+    public CodeTreeWalker(ProtexIdUtils protexUtils, int threads, int batchSize) {
+	this.protexUtils = protexUtils;
+	this.threads = Math.max(1, threads);
+	this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Walk the code tree below the given path, passing the files with pending
+     * IDs to the handler.
+     *
+     * @param rootPath
+     *            the path to start at ("/" for the whole project)
+     * @param handler
+     *            receives the files with pending IDs
+     * @return the number of files passed to the handler
+     * @throws Exception
+     *             if a directory can't be fetched, or the handler fails
+     */
+    public int walk(String rootPath, PendingFileHandler handler)
+	    throws Exception {
+	if (!protexUtils.hasPendingIds(protexUtils.getCodeTreeDir(rootPath))) {
+	    log.info("No pending IDs under " + rootPath);
+	    return 0;
+	}
+
+	Walk walk = new Walk();
+	ExecutorService executor = Executors.newFixedThreadPool(threads);
+	int fileCount = 0;
+	try {
+	    walk.submit(executor, rootPath);
+
+	    // Hand the files to the handler on this thread as they arrive
+	    while (true) {
+		FileBatch batch = walk.batchQueue.take();
+		if (batch.error != null) {
+		    throw new Exception("Error walking code tree at "
+			    + batch.path + ": " + batch.error.getMessage(),
+			    batch.error);
+		}
+		if (batch.files == null) {
+		    break;
+		}
+		handler.handleFiles(batch.path, batch.files);
+		fileCount += batch.files.size();
+	    }
+	} finally {
+	    walk.aborted = true;
+	    executor.shutdownNow();
+	}
+	log.info("Found " + fileCount + " files with pending IDs under "
+		+ rootPath);
+	return fileCount;
+    }
+
+    /**
+     * List a directory, skip the children without pending IDs, queue the
+     * files that are left and return the directories.
+     */
+    private List<String> visitDirectory(String path,
+	    BlockingQueue<FileBatch> batchQueue) throws Exception {
+	PartialCodeTree contents = protexUtils.getCodeTreeDirContents(path);
+	if (contents.getNodes().isEmpty()) {
+	    return new ArrayList<String>(0);
+	}
+	PartialCodeTreeWithCount counts = protexUtils
+		.getPartialCodeTreeWithCount(contents);
+	Set<String> pendingNames = new HashSet<String>();
+	for (CodeTreeNodeWithCount countNode : counts.getNodes()) {
+	    if (countNode.getCount() > 0) {
+		pendingNames.add(countNode.getName());
+	    }
+	}
+
+	List<String> subdirectories = new ArrayList<String>();
+	List<CodeTreeNode> files = new ArrayList<CodeTreeNode>();
+	for (CodeTreeNode node : contents.getNodes()) {
+	    if (!pendingNames.contains(node.getName())) {
+		continue;
+	    }
+	    if (node.getNodeType() == CodeTreeNodeType.FILE) {
+		files.add(node);
+		if (files.size() == batchSize) {
+		    batchQueue.put(new FileBatch(path, files, null));
+		    files = new ArrayList<CodeTreeNode>();
+		}
+	    } else {
+		subdirectories.add(getChildPath(path, node.getName()));
+	    }
+	}
+	if (!files.isEmpty()) {
+	    batchQueue.put(new FileBatch(path, files, null));
+	}
+	log.debug(path + ": " + subdirectories.size()
+		+ " directories with pending IDs");
+	return subdirectories;
+    }
+
+    private static String getChildPath(String path, String name) {
+	if (path.endsWith("/")) {
+	    return path + name;
+	}
+	return path + "/" + name;
+    }
+
+    /** The state of a single walk. */
+    private class Walk {
+	private final BlockingQueue<FileBatch> batchQueue = new ArrayBlockingQueue<FileBatch>(
+		BATCH_QUEUE_CAPACITY);
+
+	/** The number of directories submitted but not yet visited. */
+	private final AtomicInteger outstanding = new AtomicInteger();
+
+	private volatile boolean aborted = false;
+
+	private void submit(final ExecutorService executor, final String path) {
+	    outstanding.incrementAndGet();
+	    executor.execute(new Runnable() {
+		@Override
+		public void run() {
+		    try {
+			if (!aborted) {
+			    for (String subdirectory : visitDirectory(path,
+				    batchQueue)) {
+				submit(executor, subdirectory);
+			    }
+			}
+			if (outstanding.decrementAndGet() == 0) {
+			    // That was the last directory
+			    batchQueue.put(new FileBatch(path, null, null));
+			}
+		    } catch (InterruptedException e) {
+			// The walk has been given up; nobody is listening
+			Thread.currentThread().interrupt();
+		    } catch (Exception e) {
+			aborted = true;
+			try {
+			    batchQueue.put(new FileBatch(path, null, e));
+			} catch (InterruptedException ie) {
+			    Thread.currentThread().interrupt();
+			}
+		    }
+		}
+	    });
+	}
+    }
+
+    /**
+     * Files on their way from the worker that found them to the handler. A
+     * FileBatch without files marks the end of the walk, or (if it has an
+     * error) a failure.
+     */
+    private static class FileBatch {
+	private final String path;
+	private final List<CodeTreeNode> files;
+	private final Exception error;
+
+	private FileBatch(String path, List<CodeTreeNode> files, Exception error) {
+	    this.path = path;
+	    this.files = files;
+	    this.error = error;
+	}
+    }
+}
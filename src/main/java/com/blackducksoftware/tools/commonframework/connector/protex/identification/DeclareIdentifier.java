@@ -51,9 +51,8 @@ public class DeclareIdentifier implements Identifier {
 	LicenseInfo lic = new LicenseInfo();
 
 	String licenseId = target.getMatchingLicenseInfo().getLicenseId();
-	License thisLicense = protexUtils.getProtexServerWrapper()
-		.getInternalApiWrapper().getLicenseApi()
-		.getLicenseById(licenseId);
+	License thisLicense = protexUtils.getLicenseCache()
+		.getLicense(licenseId);
 	if (thisLicense != null) {
 	    log.debug(target.getMatchingComponentId() + ": License: "
 		    + thisLicense.getName());
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex.identification;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.sdk.protex.common.BomRefreshMode;
+import com.blackducksoftware.sdk.protex.project.codetree.discovery.CodeMatchDiscovery;
+
+/**
+ * Makes identifications (through ProtexIdUtils.makeId(), and so through the
+ * Identifier) on a pool of threads, with a bounded number of requests in
+ * flight, and refreshes the BOM at checkpoints rather than after every
+ * identification.
+ *
+ * This only pays off when the identifier skips the per-identification BOM
+ * refresh. DeclareIdentifier always does; a CodeMatchIdIdentifier is switched
+ * to BomRefreshMode.SKIP by the pipeline, and back to its own mode by close()
+ * (and so by finish()). For any other identifier that refreshes the BOM
+ * itself, a warning is logged. The BOM is refreshed every refreshInterval
+ * identifications (if not 0), at every checkpoint(), and by finish() if there
+ * have been identifications since the last refresh. A multi-pass strategy
+ * should call checkpoint() at the end of each pass, so that the next pass sees
+ * correct pending ID counts.
+ *
+ * submit() is meant to be called from a single thread; it blocks while the
+ * maximum number of identifications are in flight. The first identification
+ * that fails stops the pipeline: its error is thrown by the next call to
+ * submit(), checkpoint() or finish().
+ *
+ * The pipeline's threads are daemon threads, so they don't keep the JVM
+ * alive, but identifications still in flight when the JVM exits are lost.
+ * Call finish() to complete the identifications, or close() to abandon them
+ * (for example, after an error).
+ */
+public class IdentificationPipeline implements Closeable {
+
+    private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+    private final ProtexIdUtils protexUtils;
+    private final int maxInFlight;
+    private final int refreshInterval;
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+
+    /**
+     * The identifier the pipeline switched to BomRefreshMode.SKIP, and the
+     * mode to switch it back to, or null if the pipeline left it alone.
+     */
+    private CodeMatchIdIdentifier skippingIdentifier = null;
+    private BomRefreshMode previousBomRefreshMode = null;
+
+    private volatile Exception error = null;
+    private int submittedSinceRefresh = 0;
+    private int submittedCount = 0;
+
+    /**
+     * Create a pipeline. If the identifier is a CodeMatchIdIdentifier, its BOM
+     * refresh mode is set to SKIP, as the pipeline does the refreshes, until
+     * the pipeline is closed.
+     *
+     * @param protexUtils
+     *            makes the identifications
+     * @param maxInFlight
+     *            the maximum number of identifications in flight
+     * @param refreshInterval
+     *            the number of identifications between BOM refreshes, or 0 to
+     *            refresh only at checkpoints and at the end
+     */
+    public IdentificationPipeline(ProtexIdUtils protexUtils, int maxInFlight,
+	    int refreshInterval) {
+	this.protexUtils = protexUtils;
+	this.maxInFlight = Math.max(1, maxInFlight);
+	this.refreshInterval = Math.max(0, refreshInterval);
+	executor = Executors.newFixedThreadPool(this.maxInFlight,
+		new ThreadFactory() {
+		    @Override
+		    public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "IdentificationPipeline");
+			thread.setDaemon(true);
+			return thread;
+		    }
+		});
+	inFlight = new Semaphore(this.maxInFlight);
+	skipIdentifierBomRefresh(protexUtils.getIdentifier());
+    }
+
+    private void skipIdentifierBomRefresh(Identifier identifier) {
+	if (identifier instanceof CodeMatchIdIdentifier) {
+	    CodeMatchIdIdentifier codeMatchIdentifier = (CodeMatchIdIdentifier) identifier;
+	    if (codeMatchIdentifier.getBomRefreshMode() != BomRefreshMode.SKIP) {
+		previousBomRefreshMode = codeMatchIdentifier
+			.getBomRefreshMode();
+		skippingIdentifier = codeMatchIdentifier;
+		codeMatchIdentifier.setBomRefreshMode(BomRefreshMode.SKIP);
+	    }
+	} else if (!identifier.isFinalBomRefreshRequired()) {
+	    log.warn("The identifier (" + identifier.getClass().getName()
+		    + ") refreshes the BOM after every identification;"
+		    + " the pipeline will not make identifications faster");
+	}
+    }
+
+    /**
+     * Queue an identification, waiting while the maximum number are in
+     * flight.
+     *
+     * @param path
+     *            the path to the file
+     * @param target
+     *            the discovery to make the identification with
+     * @throws Exception
+     *             if an earlier identification failed, or the thread is
+     *             interrupted
+     */
+    public void submit(final String path, final CodeMatchDiscovery target)
+	    throws Exception {
+	checkError();
+	if (refreshInterval > 0 && submittedSinceRefresh >= refreshInterval) {
+	    checkpoint();
+	}
+
+	inFlight.acquire();
+	try {
+	    executor.execute(new Runnable() {
+		@Override
+		public void run() {
+		    try {
+			if (error == null) {
+			    protexUtils.makeId(path, target);
+			}
+		    } catch (Exception e) {
+			if (error == null) {
+			    error = e;
+			}
+		    } finally {
+			inFlight.release();
+		    }
+		}
+	    });
+	} catch (RuntimeException e) {
+	    inFlight.release();
+	    throw e;
+	}
+	submittedSinceRefresh++;
+	submittedCount++;
+    }
+
+    /**
+     * Wait for the identifications in flight to finish, then refresh the BOM
+     * (if the identifier leaves that to the caller).
+     *
+     * @throws Exception
+     *             if an identification or the refresh failed
+     */
+    public void checkpoint() throws Exception {
+	drain();
+	if (submittedSinceRefresh > 0) {
+	    log.debug("Checkpoint after " + submittedCount + " identifications");
+	    protexUtils.refreshBomCheckpoint();
+	    submittedSinceRefresh = 0;
+	}
+    }
+
+    /**
+     * Wait for the identifications in flight to finish, do the final BOM
+     * refresh if there have been identifications since the last one, and shut
+     * the pipeline down.
+     *
+     * If the pipeline switched the identifier to BomRefreshMode.SKIP, the
+     * final refresh is always done (ProtexIdUtils.refreshBomCheckpoint()), as
+     * the identifier would have refreshed the BOM itself. Otherwise it is done
+     * by ProtexIdUtils.refreshBom(), which honours the doRefresh setting.
+     *
+     * @return the number of identifications made
+     * @throws Exception
+     *             if an identification or the refresh failed
+     */
+    public int finish() throws Exception {
+	try {
+	    drain();
+	    if (submittedSinceRefresh > 0) {
+		if (skippingIdentifier != null) {
+		    protexUtils.refreshBomCheckpoint();
+		} else {
+		    protexUtils.refreshBom();
+		}
+		submittedSinceRefresh = 0;
+	    }
+	} finally {
+	    close();
+	}
+	log.info("Made " + submittedCount + " identifications");
+	return submittedCount;
+    }
+
+    /**
+     * Shut the pipeline down without waiting for the identifications in
+     * flight, and without refreshing the BOM, and switch the identifier back
+     * to its own BOM refresh mode. Identifications that have not started are
+     * dropped. Calling close() after finish() does nothing.
+     */
+    @Override
+    public void close() {
+	executor.shutdownNow();
+	if (skippingIdentifier != null) {
+	    skippingIdentifier.setBomRefreshMode(previousBomRefreshMode);
+	    skippingIdentifier = null;
+	}
+    }
+
+    /**
+     * Wait until no identifications are in flight.
+     */
+    private void drain() throws Exception {
+	inFlight.acquire(maxInFlight);
+	inFlight.release(maxInFlight);
+	checkError();
+    }
+
+    private void checkError() throws Exception {
+	Exception e = error;
+	if (e != null) {
+	    throw new Exception("Identification failed: " + e.getMessage(), e);
+	}
+    }
+}
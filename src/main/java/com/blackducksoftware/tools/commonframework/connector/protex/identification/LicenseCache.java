@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex.identification;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.sdk.fault.SdkFault;
+import com.blackducksoftware.sdk.protex.license.License;
+import com.blackducksoftware.sdk.protex.license.LicenseApi;
+
+/**
+ * A cache of license metadata, by license ID. A project's matches usually
+ * involve only a few dozen distinct licenses, so identifiers that need license
+ * details for every file they identify should get them from here rather than
+ * from LicenseApi. Safe for use by multiple threads.
+ *
+ * The cache can be prewarmed with the licenses that are known to be needed
+ * (for example, those of a batch of discoveries) before identification starts.
+ */
+public class LicenseCache {
+
+    /** Stands for a license ID that Protex returned no license for. */
+    private static final License NO_LICENSE = new License();
+
+    private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+    private final LicenseApi licenseApi;
+
+    private final ConcurrentMap<String, License> licenses = new ConcurrentHashMap<String, License>();
+
+    /**
+     * Create an empty cache.
+     *
+     * @param licenseApi
+     *            where licenses that are not yet cached are fetched from
+     */
+    public LicenseCache(LicenseApi licenseApi) {
+	this.licenseApi = licenseApi;
+    }
+
+    /**
+     * Get a license, fetching it from Protex if it has not been fetched
+     * before.
+     *
+     * @param licenseId
+     *            the license ID
+     * @return the license, or null if Protex has no license with that ID
+     * @throws SdkFault
+     */
+    public License getLicense(String licenseId) throws SdkFault {
+	if (licenseId == null) {
+	    return null;
+	}
+	License license = licenses.get(licenseId);
+	if (license == null) {
+	    // Two threads may both fetch the same license; that's harmless
+	    license = licenseApi.getLicenseById(licenseId);
+	    if (license == null) {
+		license = NO_LICENSE;
+	    }
+	    licenses.putIfAbsent(licenseId, license);
+	}
+	return license == NO_LICENSE ? null : license;
+    }
+
+    /**
+     * Fetch the given licenses from Protex, unless they are already cached.
+     *
+     * @param licenseIds
+     *            the license IDs
+     * @return the number of licenses fetched
+     * @throws SdkFault
+     */
+    public int prewarm(Collection<String> licenseIds) throws SdkFault {
+	int fetched = 0;
+	for (String licenseId : licenseIds) {
+	    if (licenseId != null && !licenses.containsKey(licenseId)) {
+		getLicense(licenseId);
+		fetched++;
+	    }
+	}
+	log.debug("Prewarmed license cache with " + fetched + " licenses");
+	return fetched;
+    }
+
+    /**
+     * Get the number of cached licenses.
+     *
+     * @return the number of licenses
+     */
+    public int size() {
+	return licenses.size();
+    }
+
+    /**
+     * Drop all cached licenses.
+     */
+    public void clear() {
+	licenses.clear();
+    }
+}
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex.identification;
+
+import java.util.List;
+
+import com.blackducksoftware.sdk.protex.project.codetree.CodeTreeNode;
+
+/**
+ * Receives the files with pending identifications found while walking a
+ * project's code tree, a directory's worth (or a batch of it) at a time.
+ */
+public interface PendingFileHandler {
+
+    /**
+     * Handle a batch of files with pending identifications.
+     *
+     * @param path
+     *            the path of the directory the files are in
+     * @param files
+     *            the file nodes, with names relative to path
+     * @throws Exception
+     *             to abort the walk
+     */
+    public void handleFiles(String path, List<CodeTreeNode> files) throws Exception;
+}
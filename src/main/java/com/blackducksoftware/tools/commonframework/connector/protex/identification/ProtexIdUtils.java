@@ -20,7 +20,11 @@ package com.blackducksoftware.tools.commonframework.connector.protex.identificat
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,17 +47,47 @@ import com.blackducksoftware.tools.commonframework.standard.protex.ProtexProject
 import com.blackducksoftware.tools.commonframework.standard.protex.identification.IdentificationMade;
 
 public class ProtexIdUtils {
+    private static final int DEFAULT_DISCOVERY_THREADS = 4;
+    private static final int VERSION_NAME_CACHE_SIZE = 10000;
+
+    /**
+     * Component version names, keyed by server, component ID and version ID.
+     * Shared by all instances; least recently used names are dropped first.
+     */
+    private static final Map<String, String> versionNameCache = Collections
+	    .synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+			Map.Entry<String, String> eldest) {
+		    return size() > VERSION_NAME_CACHE_SIZE;
+		}
+	    });
+
+    /**
+     * The server wrapper of the most recently created instance. Only used by
+     * the deprecated static getComponentVersionString().
+     */
+    private static volatile ProtexServerWrapper<ProtexProjectPojo> lastServerWrapper = null;
+
     private Logger log = LoggerFactory.getLogger(this.getClass().getName());
     private final Identifier identifier;
-    private static ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper = null;
+    private final ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper;
     private final String projectId;
     private final List<CodeTreeNodeType> nodeTypesToIncludeFiles;
     private final List<CodeTreeNodeType> nodeTypesToIncludeAll;
-    private final Collection<IdentificationMade> identificationsMade = new ArrayList<IdentificationMade>();
-    private boolean doRefresh;
+    private final Collection<IdentificationMade> identificationsMade = new ConcurrentLinkedQueue<IdentificationMade>();
+    private final boolean doRefresh;
+    private final long maxChildElements;
+    private volatile CodeMatchDiscoveryFetcher discoveryFetcher;
+    private LicenseCache licenseCache;
 
     /**
-     * Constructor
+     * Constructor. This creates a connection of its own, outside any
+     * ProtexProxyPool; to share pooled connections, create a
+     * ProtexServerWrapper with the pool and use the constructor that takes
+     * it.
      *
      * @param config
      *            a ConfigurationManager with Protex server/username/password
@@ -63,12 +97,27 @@ public class ProtexIdUtils {
      */
     public ProtexIdUtils(ConfigurationManager config, Identifier identifier,
 	    String protexProjectName, boolean doRefresh) throws Exception {
-	this.doRefresh = doRefresh;
+	this(createServerWrapper(config), identifier, protexProjectName,
+		doRefresh);
+    }
 
-	log.debug("Creating ProtexServerWrapper");
-	protexServerWrapper = new ProtexServerWrapper<ProtexProjectPojo>(config.getServerBean(),
-		config, true);
-	log.debug("Created ProtexServerWrapper");
+    /**
+     * Constructor for an existing server connection. Any number of instances
+     * (for different projects, or different servers) can be used at the same
+     * time, and an instance can be used by several threads.
+     *
+     * @param protexServerWrapper
+     *            the connection to the Protex server
+     * @throws Exception
+     *             upon error using Protex
+     */
+    public ProtexIdUtils(
+	    ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
+	    Identifier identifier, String protexProjectName, boolean doRefresh)
+	    throws Exception {
+	this.doRefresh = doRefresh;
+	this.protexServerWrapper = protexServerWrapper;
+	lastServerWrapper = protexServerWrapper;
 
 	log.debug("Loading project " + protexProjectName);
 	Project project = loadProject(protexProjectName);
@@ -79,6 +128,63 @@ public class ProtexIdUtils {
 	nodeTypesToIncludeAll = getNodeTypesToIncludeAll();
 
 	this.identifier = identifier;
+
+	maxChildElements = protexServerWrapper.getConfigManager()
+		.getChildElementCount();
+	discoveryFetcher = new CodeMatchDiscoveryFetcher(this,
+		maxChildElements, DEFAULT_DISCOVERY_THREADS);
+    }
+
+    private static ProtexServerWrapper<ProtexProjectPojo> createServerWrapper(
+	    ConfigurationManager config) throws Exception {
+	return new ProtexServerWrapper<ProtexProjectPojo>(
+		config.getServerBean(), config, true);
+    }
+
+    /**
+     * Set the number of requests getCodeMatchDiscoveries(path, files) may
+     * have outstanding at the same time when it splits a long list of files.
+     *
+     * @param threads
+     *            the number of concurrent requests
+     */
+    public void setDiscoveryThreads(int threads) {
+	discoveryFetcher = new CodeMatchDiscoveryFetcher(this,
+		maxChildElements, threads);
+    }
+
+    /**
+     * Get the license cache identifiers should get license details from. It is
+     * created on first use, unless one has been set with setLicenseCache().
+     *
+     * @return the license cache
+     */
+    public synchronized LicenseCache getLicenseCache() {
+	if (licenseCache == null) {
+	    licenseCache = new LicenseCache(protexServerWrapper
+		    .getInternalApiWrapper().getLicenseApi());
+	}
+	return licenseCache;
+    }
+
+    /**
+     * Set the license cache, so that it can be shared by several instances
+     * (for the same server).
+     *
+     * @param licenseCache
+     *            the license cache
+     */
+    public synchronized void setLicenseCache(LicenseCache licenseCache) {
+	this.licenseCache = licenseCache;
+    }
+
+    /**
+     * Get the identifier that makes the identifications.
+     *
+     * @return the identifier
+     */
+    public Identifier getIdentifier() {
+	return identifier;
     }
 
     /**
@@ -155,7 +261,7 @@ public class ProtexIdUtils {
 		.getMatchingSourceInfo().getFirstLine(), target
 		.getMatchingSourceInfo().getLineCount(),
 		target.getMatchingComponentId(), target.getMatchingVersionId(),
-		getComponentVersionString(target),
+		getComponentVersionName(target),
 		target.getMatchRatioAsPercent());
 
 	identificationsMade.add(idMade);
@@ -228,6 +334,28 @@ public class ProtexIdUtils {
 	return files;
     }
 
+    /**
+     * Walk the code tree below the given path, passing the files with pending
+     * IDs to the handler in batches. Up to threads directories are fetched at
+     * the same time, and subtrees without pending IDs are skipped. The handler
+     * is called on the calling thread. See CodeTreeWalker.
+     *
+     * @param path
+     *            the path to start at ("/" for the whole project)
+     * @param threads
+     *            the number of directories to fetch at the same time
+     * @param batchSize
+     *            the maximum number of files per handler call
+     * @param handler
+     *            receives the files with pending IDs
+     * @return the number of files passed to the handler
+     * @throws Exception
+     */
+    public int walkPendingFiles(String path, int threads, int batchSize,
+	    PendingFileHandler handler) throws Exception {
+	return new CodeTreeWalker(this, threads, batchSize).walk(path, handler);
+    }
+
     /**
      * Get a PartialCodeTreeWithCount for the files in a given PartialCodeTree
      *
@@ -255,12 +383,15 @@ public class ProtexIdUtils {
 	CodeMatchDiscovery bestCodeMatchDiscovery = null;
 	for (CodeMatchDiscovery match : codeMatchDiscoveries) {
 	    int thisScore = match.getMatchRatioAsPercent();
-	    String versionString = getComponentVersionString(match);
 
-	    log.debug("Code Match Discovery: " + match.getMatchingComponentId()
-		    + "/" + versionString + "; score: " + thisScore
-		    + "; ID status: "
-		    + match.getIdentificationStatus().toString());
+	    if (log.isDebugEnabled()) {
+		// The version name is only needed for this message
+		String versionString = getComponentVersionName(match);
+		log.debug("Code Match Discovery: "
+			+ match.getMatchingComponentId() + "/" + versionString
+			+ "; score: " + thisScore + "; ID status: "
+			+ match.getIdentificationStatus().toString());
+	    }
 
 	    if (match.getIdentificationStatus() == IdentificationStatus.PENDING_IDENTIFICATION) {
 
@@ -279,24 +410,60 @@ public class ProtexIdUtils {
     }
 
     /**
-     * Get the version string for a match. This is SLOW.
+     * Get the version string for a match. The first lookup of a given version
+     * is SLOW; after that, the name comes from a cache shared by all
+     * instances.
      *
      * @param match
      * @return
      */
+    public String getComponentVersionName(CodeMatchDiscovery match) {
+	return getComponentVersionName(protexServerWrapper, match);
+    }
+
+    /**
+     * Get the version string for a match, using the server of the most
+     * recently created instance.
+     *
+     * @param match
+     * @return
+     * @deprecated use the instance method getComponentVersionName(), which
+     *             uses the right server when several instances are in use
+     */
+    @Deprecated
     public static String getComponentVersionString(CodeMatchDiscovery match) {
+	ProtexServerWrapper<ProtexProjectPojo> serverWrapper = lastServerWrapper;
+	if (serverWrapper == null) {
+	    return "unknown";
+	}
+	return getComponentVersionName(serverWrapper, match);
+    }
+
+    private static String getComponentVersionName(
+	    ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
+	    CodeMatchDiscovery match) {
 	String versionString = "unknown";
-	if (protexServerWrapper != null) {
-	    try {
-		ComponentVersion version = protexServerWrapper
-			.getInternalApiWrapper()
-			.getComponentVersionApi()
-			.getComponentVersionById(
-				match.getMatchingComponentId(),
-				match.getMatchingVersionId());
-		versionString = version.getVersionName();
-	    } catch (Exception e) {
+	String cacheKey = protexServerWrapper.getConfigManager()
+		.getServerBean().getServerName()
+		+ "|"
+		+ match.getMatchingComponentId()
+		+ "|"
+		+ match.getMatchingVersionId();
+	String cachedName = versionNameCache.get(cacheKey);
+	if (cachedName != null) {
+	    return cachedName;
+	}
+	try {
+	    ComponentVersion version = protexServerWrapper
+		    .getInternalApiWrapper()
+		    .getComponentVersionApi()
+		    .getComponentVersionById(match.getMatchingComponentId(),
+			    match.getMatchingVersionId());
+	    versionString = version.getVersionName();
+	    if (versionString != null) {
+		versionNameCache.put(cacheKey, versionString);
 	    }
+	} catch (Exception e) {
 	}
 	return versionString;
     }
@@ -321,7 +488,9 @@ public class ProtexIdUtils {
     }
 
     /**
-     * Get the code match discoveries for a list of files.
+     * Get the code match discoveries for a list of files. Long lists are split
+     * into requests that fit the CXF child element limit, which are sent in
+     * parallel; see CodeMatchDiscoveryFetcher.
      *
      * @param tree
      * @return
@@ -329,10 +498,7 @@ public class ProtexIdUtils {
      */
     public List<CodeMatchDiscovery> getCodeMatchDiscoveries(String path,
 	    List<CodeTreeNode> files) throws SdkFault {
-	PartialCodeTree tree = new PartialCodeTree();
-	tree.setParentPath(path);
-	tree.getNodes().addAll(files);
-	return getCodeMatchDiscoveries(tree);
+	return discoveryFetcher.fetch(path, files);
     }
 
     /**
@@ -352,6 +518,21 @@ public class ProtexIdUtils {
 	}
     }
 
+    /**
+     * Refresh the BOM if the identifier leaves that to the caller, even if
+     * refreshing was turned off for this instance. Used at checkpoints of
+     * multi-pass strategies, which need up to date pending ID counts.
+     *
+     * @throws SdkFault
+     */
+    public void refreshBomCheckpoint() throws SdkFault {
+	if (identifier.isFinalBomRefreshRequired()) {
+	    log.info("Refreshing BOM (checkpoint).");
+	    protexServerWrapper.getInternalApiWrapper().getBomApi()
+		    .refreshBom(projectId, true, false);
+	}
+    }
+
     /**
      * Find out if the identifier being used requires multiple passes on the
      * file tree to make all identifications
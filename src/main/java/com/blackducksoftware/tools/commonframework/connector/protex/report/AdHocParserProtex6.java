@@ -18,11 +18,12 @@
 
 package com.blackducksoftware.tools.commonframework.connector.protex.report;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -30,6 +31,7 @@ import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.blackducksoftware.tools.commonframework.connector.protex.InstanceFactory;
 import com.blackducksoftware.tools.commonframework.standard.protex.report.AdHocElement;
 import com.blackducksoftware.tools.commonframework.standard.protex.report.HocElement;
 import com.blackducksoftware.tools.commonframework.standard.protex.report.IAdHocParser;
@@ -237,47 +239,120 @@ public class AdHocParserProtex6<T extends HocElement> implements
 	    boolean returnRawHtml, Class<T> hocElementClass,
 	    int targetSectionIndex, ArrayList<T> rowElements,
 	    Integer counter, Elements allReportSections) throws Exception {
-	
+
 	int adHocHeaderSize = adHocHeader.getSize();
+
+	// Resolve the header once: columnKeys[position] is the key for the cell
+	// at that position.
+	String[] columnKeys = new String[adHocHeaderSize];
+	for (int position = 0; position < adHocHeaderSize; position++) {
+	    columnKeys[position] = adHocHeader.getCoordinate(position);
+	}
+	// The empty cells can be counted as the cells are read, unless two
+	// header keys are the same (or one is "counter"), in which case one
+	// cell can overwrite another
+	boolean countEmptyCellsInline = hasDistinctKeys(columnKeys);
+
 	Element reportSection = allReportSections.get(targetSectionIndex);
-	Elements rows = reportSection.select(SELECTOR_TAG_TABLE_ROW);
+	List<Element> rows = getChildren(reportSection, SELECTOR_TAG_TABLE_ROW);
 	log.info("Parsing Conforming Section. adHocHeader size = "
 		+ adHocHeaderSize + " ; row count = " + rows.size());
+	boolean debug = log.isDebugEnabled();
+	InstanceFactory<T> rowFactory = InstanceFactory
+		.forClass(hocElementClass);
 	for (Element row : rows) {
-	    T adHocRow = generateNewInstance(hocElementClass);
+	    T adHocRow = rowFactory.newInstance();
 	    adHocRow.setPair("counter", counter.toString());
-	    Elements rowCells = row.select(SELECTOR_TAG_TABLE_DATA);
 
+	    // Header position 0 (the section title) never has a cell
+	    int emptyCellCount = 1;
 	    int position = 1;
-	    for (Element rowCell : rowCells) {
+	    for (Element rowCell : row.children()) {
+		if (!SELECTOR_TAG_TABLE_DATA.equals(rowCell.tagName())) {
+		    continue;
+		}
 		if (adHocHeaderSize > 0) {
-		    String headerKey = adHocHeader.getCoordinate(position);
+		    String headerKey = (position < adHocHeaderSize) ? columnKeys[position]
+			    : adHocHeader.getCoordinate(position);
+		    String cellValue;
 		    if (returnRawHtml) {
 			// This grabs the inner HTML (thus stripping out table
 			// data blocks) and stuffs it raw.
-			adHocRow.setPair(headerKey,
-				ParserUtils.decode(rowCell.html().toString()));
-			log.debug("    Set Pair: " + headerKey + " : "
-				+ rowCell.html().toString());
+			cellValue = rowCell.html();
 		    } else {
-			adHocRow.setPair(headerKey,
-				ParserUtils.decode(rowCell.text()));
+			cellValue = rowCell.text();
+		    }
+		    String value = ParserUtils.decode(cellValue);
+		    adHocRow.setPair(headerKey, value);
+		    if ((position < adHocHeaderSize)
+			    && ((value == null) || (value.length() == 0))) {
+			emptyCellCount++;
+		    }
+		    if (debug) {
 			log.debug("Set Pair in position: " + position + " -  "
-				+ headerKey + " : " + rowCell.text());
+				+ headerKey + " : " + cellValue);
 		    }
 		}
 		position++;
 	    } // row cell
 
-	    if (rowContainsValidData(adHocRow, adHocHeader)) {
+	    // Header positions with no cell in this row are empty too
+	    if (position < adHocHeaderSize) {
+		emptyCellCount += adHocHeaderSize - position;
+	    }
+
+	    boolean validRow = countEmptyCellsInline ? (emptyCellCount <= MAX_LEGIT_EMPTY_CELLS)
+		    : rowContainsValidData(adHocRow, adHocHeader);
+	    if (validRow) {
 		rowElements.add(adHocRow);
-		log.debug("Add row element : " + counter);
+		if (debug) {
+		    log.debug("Add row element : " + counter);
+		}
 	    }
 	    counter++;
 	} // row
 	log.debug("Parsing Conforming Section. counter = " + counter);
     }
 
+    /**
+     * Get the child elements of the given element that have the given tag.
+     * Unlike select(), this does not descend into the children, so it is
+     * cheaper and does not pick up the rows of nested tables.
+     *
+     * @param parent
+     * @param tagName
+     * @return
+     */
+    private static List<Element> getChildren(Element parent, String tagName) {
+	Elements children = parent.children();
+	List<Element> matchingChildren = new ArrayList<Element>(
+		children.size());
+	for (Element child : children) {
+	    if (tagName.equals(child.tagName())) {
+		matchingChildren.add(child);
+	    }
+	}
+	return matchingChildren;
+    }
+
+    /**
+     * Check that no two header keys are the same, and that none of them is the
+     * "counter" key, so each row value is set by exactly one cell.
+     *
+     * @param columnKeys
+     * @return
+     */
+    private static boolean hasDistinctKeys(String[] columnKeys) {
+	Set<String> keys = new HashSet<String>();
+	keys.add("counter");
+	for (String columnKey : columnKeys) {
+	    if ((columnKey == null) || !keys.add(columnKey)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
     /**
      * This checks the integrity of the row and makes sure there is data instead
      * of blank values. Protex occasionally includes a file in the
@@ -290,7 +365,7 @@ public class AdHocParserProtex6<T extends HocElement> implements
      *            the ad hoc header
      * @return true, if successful
      */
-    private boolean rowContainsValidData(HocElement adHocRow,
+    static boolean rowContainsValidData(HocElement adHocRow,
 	    HocElement adHocHeader) {
 	Collection<String> headerValues = adHocHeader.getInternalValues();
 	Iterator<String> it = headerValues.iterator();
@@ -311,6 +386,39 @@ public class AdHocParserProtex6<T extends HocElement> implements
 	}
     }
 
+    /**
+     * The same check as rowContainsValidData(HocElement, HocElement), for a row
+     * given as keys and values (see ReportRowValueHandler).
+     *
+     * @param keys
+     *            the row's keys
+     * @param values
+     *            the row's values
+     * @param size
+     *            the number of keys and values
+     * @param adHocHeader
+     *            the ad hoc header
+     * @return true, if successful
+     */
+    static boolean rowContainsValidData(String[] keys, String[] values,
+	    int size, HocElement adHocHeader) {
+	int emptyCellCount = 0;
+	for (String key : adHocHeader.getInternalValues()) {
+	    // As with setPair(), the last value for a key is the one that counts
+	    String value = null;
+	    for (int i = size - 1; i >= 0; i--) {
+		if ((key == null) ? (keys[i] == null) : key.equals(keys[i])) {
+		    value = values[i];
+		    break;
+		}
+	    }
+	    if (value == null || value.length() == 0) {
+		emptyCellCount++;
+	    }
+	}
+	return emptyCellCount <= MAX_LEGIT_EMPTY_CELLS;
+    }
+
     /**
      * Parses the header row of the HTML document. If a header is missing then a
      * fatal exception is generated.
@@ -387,31 +495,8 @@ public class AdHocParserProtex6<T extends HocElement> implements
      * @throws Exception
      *             the exception
      */
-    private T generateNewInstance(Class<T> hocElementClass)
-	    throws Exception {
-	T adHocRow = null;
-	Constructor<?> constructor = null;
-	;
-	try {
-	    constructor = hocElementClass.getConstructor();
-	} catch (SecurityException e) {
-	    throw new Exception(e.getMessage());
-	} catch (NoSuchMethodException e) {
-	    throw new Exception(e.getMessage());
-	}
-
-	try {
-	    adHocRow = (T) constructor.newInstance();
-	} catch (IllegalArgumentException e) {
-	    throw new Exception(e.getMessage());
-	} catch (InstantiationException e) {
-	    throw new Exception(e.getMessage());
-	} catch (IllegalAccessException e) {
-	    throw new Exception(e.getMessage());
-	} catch (InvocationTargetException e) {
-	    throw new Exception(e.getMessage());
-	}
-
-	return adHocRow;
+    static <E extends HocElement> E generateNewInstance(
+	    Class<E> hocElementClass) throws Exception {
+	return InstanceFactory.newInstance(hocElementClass);
     }
 }
@@ -0,0 +1,444 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex.report;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.blackducksoftware.tools.commonframework.standard.protex.report.HocElement;
+
+/**
+ * A compact, column oriented store for the rows of a report section. Instead
+ * of keeping a HocElement (and its own key/value map) per row, the values of
+ * each column are kept together, under a single shared set of column keys.
+ *
+ * Columns start out holding ints, which suits the "counter" column and other
+ * numeric columns: a value is stored as an int as long as it is written the
+ * way Integer.toString() writes it. A column with any other value is switched
+ * to dictionary encoding: each distinct value is stored once, and each row
+ * holds an int code. This suits low cardinality columns such as license or
+ * component names. A column that turns out to have mostly distinct values
+ * (file paths, for example) is switched to a plain array of values.
+ *
+ * Rows are read back through lightweight Row views, or converted back to
+ * HocElements for existing consumers.
+ *
+ * Use it as the row handler of the streaming parser to collect a section. As
+ * a ReportRowValueHandler, it is given each row's values directly, so no
+ * HocElement is built per row.
+ *
+ * @param <T>
+ *            the HocElement type of the rows handed to this section
+ */
+public class ColumnarReportSection<T extends HocElement> implements
+	ReportRowValueHandler<T>, Iterable<ColumnarReportSection<T>.Row> {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * A dictionary encoded column is converted to a plain column once it has
+     * at least this many rows and more than half its values are distinct.
+     */
+    private static final int MIN_ROWS_FOR_CARDINALITY_CHECK = 1024;
+
+    private final Map<String, Column> columns = new LinkedHashMap<String, Column>();
+    private Set<String> columnKeys = Collections.emptySet();
+    private int rowCount = 0;
+
+    @Override
+    public void handleRow(T row) throws Exception {
+	addRow(row);
+    }
+
+    @Override
+    public void handleRow(String[] keys, String[] values, int size)
+	    throws Exception {
+	for (int i = 0; i < size; i++) {
+	    getColumn(keys[i]).set(rowCount, values[i]);
+	}
+	rowCount++;
+    }
+
+    /**
+     * Add a row to the section.
+     *
+     * @param row
+     *            the row
+     */
+    public void addRow(HocElement row) {
+	for (String key : row.getPairKeys()) {
+	    getColumn(key).set(rowCount, row.getValue(key));
+	}
+	rowCount++;
+    }
+
+    private Column getColumn(String key) {
+	Column column = columns.get(key);
+	if (column == null) {
+	    column = new Column();
+	    columns.put(key, column);
+	    columnKeys = Collections.unmodifiableSet(new LinkedHashSet<String>(
+		    columns.keySet()));
+	}
+	return column;
+    }
+
+    /**
+     * Get the number of rows.
+     *
+     * @return the number of rows
+     */
+    public int getRowCount() {
+	return rowCount;
+    }
+
+    /**
+     * Get the keys of the columns, in the order they were first seen.
+     *
+     * @return the column keys
+     */
+    public Set<String> getColumnKeys() {
+	return columnKeys;
+    }
+
+    /**
+     * Get a value.
+     *
+     * @param rowIndex
+     *            the row index
+     * @param key
+     *            the column key
+     * @return the value, or null if the row has no value for the key
+     */
+    public String getValue(int rowIndex, String key) {
+	if ((rowIndex < 0) || (rowIndex >= rowCount)) {
+	    throw new IndexOutOfBoundsException("Row " + rowIndex
+		    + " of a section of " + rowCount + " rows");
+	}
+	Column column = columns.get(key);
+	if (column == null) {
+	    return null;
+	}
+	return column.get(rowIndex);
+    }
+
+    /**
+     * Get a lightweight view of a row.
+     *
+     * @param rowIndex
+     *            the row index
+     * @return the row
+     */
+    public Row getRow(int rowIndex) {
+	if ((rowIndex < 0) || (rowIndex >= rowCount)) {
+	    throw new IndexOutOfBoundsException("Row " + rowIndex
+		    + " of a section of " + rowCount + " rows");
+	}
+	return new Row(rowIndex);
+    }
+
+    @Override
+    public Iterator<Row> iterator() {
+	return new Iterator<Row>() {
+	    private int nextRowIndex = 0;
+
+	    @Override
+	    public boolean hasNext() {
+		return nextRowIndex < rowCount;
+	    }
+
+	    @Override
+	    public Row next() {
+		if (!hasNext()) {
+		    throw new NoSuchElementException();
+		}
+		return new Row(nextRowIndex++);
+	    }
+
+	    @Override
+	    public void remove() {
+		throw new UnsupportedOperationException();
+	    }
+	};
+    }
+
+    /**
+     * Convert the rows back to HocElements, for consumers that need them.
+     *
+     * @param hocElementClass
+     *            the hoc element class
+     * @return the rows
+     * @throws Exception
+     */
+    public <E extends HocElement> List<E> toHocElements(
+	    Class<E> hocElementClass) throws Exception {
+	List<E> rows = new ArrayList<E>(rowCount);
+	for (Row row : this) {
+	    rows.add(row.toHocElement(hocElementClass));
+	}
+	return rows;
+    }
+
+    /**
+     * A view of one row of the section. It holds nothing but the row index;
+     * values are read from the section's columns.
+     */
+    public class Row {
+	private final int rowIndex;
+
+	private Row(int rowIndex) {
+	    this.rowIndex = rowIndex;
+	}
+
+	/**
+	 * Get the index of this row within the section.
+	 *
+	 * @return the row index
+	 */
+	public int getRowIndex() {
+	    return rowIndex;
+	}
+
+	/**
+	 * Get a value.
+	 *
+	 * @param key
+	 *            the column key
+	 * @return the value, or null if the row has no value for the key
+	 */
+	public String getValue(String key) {
+	    return ColumnarReportSection.this.getValue(rowIndex, key);
+	}
+
+	/**
+	 * Get the keys this row has values for.
+	 *
+	 * @return the keys
+	 */
+	public Set<String> getPairKeys() {
+	    Set<String> keys = new LinkedHashSet<String>();
+	    for (Map.Entry<String, Column> entry : columns.entrySet()) {
+		if (entry.getValue().isSet(rowIndex)) {
+		    keys.add(entry.getKey());
+		}
+	    }
+	    return keys;
+	}
+
+	/**
+	 * Copy this row into a new HocElement.
+	 *
+	 * @param hocElementClass
+	 *            the hoc element class
+	 * @return the HocElement
+	 * @throws Exception
+	 */
+	public <E extends HocElement> E toHocElement(Class<E> hocElementClass)
+		throws Exception {
+	    E element = AdHocParserProtex6.generateNewInstance(hocElementClass);
+	    for (Map.Entry<String, Column> entry : columns.entrySet()) {
+		Column column = entry.getValue();
+		if (column.isSet(rowIndex)) {
+		    element.setPair(entry.getKey(), column.get(rowIndex));
+		}
+	    }
+	    return element;
+	}
+    }
+
+    /**
+     * The values of one column. Rows without a value hold the code UNSET (or,
+     * once the column is plain, are not marked in the set array).
+     */
+    private static class Column {
+	private static final int UNSET = Integer.MIN_VALUE;
+	private static final int NULL_VALUE = Integer.MIN_VALUE + 1;
+
+	// Int encoding: the codes are the values themselves
+	private boolean ints = true;
+
+	// Dictionary encoding
+	private Map<String, Integer> dictionary = null;
+	private List<String> dictionaryValues = null;
+	private int[] codes = newCodes(INITIAL_CAPACITY);
+
+	// Plain encoding
+	private String[] values = null;
+	private boolean[] set = null;
+
+	private int size = 0;
+
+	private void set(int rowIndex, String value) {
+	    ensureCapacity(rowIndex + 1);
+	    size = Math.max(size, rowIndex + 1);
+	    if (values != null) {
+		values[rowIndex] = value;
+		set[rowIndex] = true;
+		return;
+	    }
+
+	    if (ints) {
+		if (value == null) {
+		    codes[rowIndex] = NULL_VALUE;
+		    return;
+		}
+		if (isInt(value)) {
+		    codes[rowIndex] = Integer.parseInt(value);
+		    return;
+		}
+		convertToDictionary();
+	    }
+
+	    int code;
+	    if (value == null) {
+		code = NULL_VALUE;
+	    } else {
+		Integer existingCode = dictionary.get(value);
+		if (existingCode == null) {
+		    code = dictionaryValues.size();
+		    dictionary.put(value, code);
+		    dictionaryValues.add(value);
+		} else {
+		    code = existingCode;
+		}
+	    }
+	    codes[rowIndex] = code;
+
+	    if ((size >= MIN_ROWS_FOR_CARDINALITY_CHECK)
+		    && (dictionaryValues.size() > (size / 2))) {
+		convertToPlain();
+	    }
+	}
+
+	private boolean isSet(int rowIndex) {
+	    if (rowIndex >= size) {
+		return false;
+	    }
+	    if (values != null) {
+		return set[rowIndex];
+	    }
+	    return codes[rowIndex] != UNSET;
+	}
+
+	private String get(int rowIndex) {
+	    if (rowIndex >= size) {
+		return null;
+	    }
+	    if (values != null) {
+		return values[rowIndex];
+	    }
+	    int code = codes[rowIndex];
+	    if ((code == UNSET) || (code == NULL_VALUE)) {
+		return null;
+	    }
+	    return ints ? String.valueOf(code) : dictionaryValues.get(code);
+	}
+
+	private void ensureCapacity(int capacity) {
+	    int currentCapacity = (values != null) ? values.length
+		    : codes.length;
+	    if (capacity <= currentCapacity) {
+		return;
+	    }
+	    int newCapacity = Math.max(capacity, currentCapacity
+		    + (currentCapacity >> 1));
+	    if (values != null) {
+		values = Arrays.copyOf(values, newCapacity);
+		set = Arrays.copyOf(set, newCapacity);
+	    } else {
+		int[] newCodes = newCodes(newCapacity);
+		System.arraycopy(codes, 0, newCodes, 0, codes.length);
+		codes = newCodes;
+	    }
+	}
+
+	/**
+	 * Check whether a value can be stored as an int and read back as the
+	 * same string: an optional minus sign and digits, with no leading
+	 * zeroes, that fit in an int other than the UNSET and NULL_VALUE codes.
+	 */
+	private static boolean isInt(String value) {
+	    int length = value.length();
+	    int start = (length > 1) && (value.charAt(0) == '-') ? 1 : 0;
+	    if ((length == start) || (length - start > 10)) {
+		return false;
+	    }
+	    if ((value.charAt(start) == '0') && (length > 1)) {
+		return false; // Leading zero, or "-0"
+	    }
+	    for (int i = start; i < length; i++) {
+		char c = value.charAt(i);
+		if ((c < '0') || (c > '9')) {
+		    return false;
+		}
+	    }
+	    long longValue = Long.parseLong(value);
+	    return (longValue <= Integer.MAX_VALUE)
+		    && (longValue > NULL_VALUE);
+	}
+
+	private void convertToDictionary() {
+	    dictionary = new HashMap<String, Integer>();
+	    dictionaryValues = new ArrayList<String>();
+	    for (int rowIndex = 0; rowIndex < size; rowIndex++) {
+		int value = codes[rowIndex];
+		if ((value != UNSET) && (value != NULL_VALUE)) {
+		    String stringValue = String.valueOf(value);
+		    Integer code = dictionary.get(stringValue);
+		    if (code == null) {
+			code = dictionaryValues.size();
+			dictionary.put(stringValue, code);
+			dictionaryValues.add(stringValue);
+		    }
+		    codes[rowIndex] = code;
+		}
+	    }
+	    ints = false;
+	}
+
+	private void convertToPlain() {
+	    values = new String[codes.length];
+	    set = new boolean[codes.length];
+	    for (int rowIndex = 0; rowIndex < size; rowIndex++) {
+		int code = codes[rowIndex];
+		if (code != UNSET) {
+		    set[rowIndex] = true;
+		    values[rowIndex] = (code == NULL_VALUE) ? null
+			    : dictionaryValues.get(code);
+		}
+	    }
+	    dictionary = null;
+	    dictionaryValues = null;
+	    codes = null;
+	}
+
+	private static int[] newCodes(int capacity) {
+	    int[] newCodes = new int[capacity];
+	    Arrays.fill(newCodes, UNSET);
+	    return newCodes;
+	}
+    }
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the characters of a file through memory-mapped windows of the file,
+ * so the file's content is never copied onto the heap as a whole.
+ * Malformed input is replaced, as InputStreamReader does.
+ *
+ * The file is closed when the reader is closed, but, as Java has no supported
+ * way to unmap a buffer, the windows are only unmapped once they have been
+ * garbage collected: until then, on some platforms, the file can't be
+ * deleted.
+ */
+public class MappedFileReader extends Reader {
+    /** The size of the region of the file mapped at a time. */
+    public static final long MAP_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * The smallest window; a window must be able to hold any character, and
+     * the character split across the end of the previous window.
+     */
+    public static final long MIN_MAP_WINDOW_SIZE = 16;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final FileChannel channel;
+    private final long size;
+    private final long windowSize;
+    private final CharsetDecoder decoder;
+
+    private MappedByteBuffer window = null;
+    private long windowStart = 0;
+    private boolean endOfFile = false;
+    private boolean closed = false;
+
+    /**
+     * The low surrogate of a surrogate pair that did not fit in the caller's
+     * buffer, or -1.
+     */
+    private int pendingChar = -1;
+
+    /**
+     * Open a reader on a file.
+     *
+     * @param file
+     *            the file
+     * @param charset
+     *            the character set of the file
+     * @throws IOException
+     */
+    public MappedFileReader(File file, Charset charset) throws IOException {
+	this(file, charset, MAP_WINDOW_SIZE);
+    }
+
+    /**
+     * Open a reader on a file, mapping the given number of bytes at a time.
+     *
+     * @param file
+     *            the file
+     * @param charset
+     *            the character set of the file
+     * @param windowSize
+     *            the size of the region of the file mapped at a time; at least
+     *            MIN_MAP_WINDOW_SIZE
+     * @throws IOException
+     */
+    public MappedFileReader(File file, Charset charset, long windowSize)
+	    throws IOException {
+	if (windowSize < MIN_MAP_WINDOW_SIZE) {
+	    throw new IllegalArgumentException("windowSize must be at least "
+		    + MIN_MAP_WINDOW_SIZE);
+	}
+	channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+	size = channel.size();
+	this.windowSize = windowSize;
+	decoder = charset.newDecoder()
+		.onMalformedInput(CodingErrorAction.REPLACE)
+		.onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+	synchronized (lock) {
+	    if (closed) {
+		throw new IOException("Stream closed");
+	    }
+	    if (len == 0) {
+		return 0;
+	    }
+	    if (pendingChar >= 0) {
+		cbuf[off] = (char) pendingChar;
+		pendingChar = -1;
+		return 1;
+	    }
+	    if (endOfFile) {
+		return -1;
+	    }
+
+	    CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+	    while (out.hasRemaining()) {
+		if ((window == null) || !window.hasRemaining()) {
+		    if (!mapNextWindow()) {
+			decoder.decode(EMPTY, out, true);
+			decoder.flush(out);
+			endOfFile = true;
+			break;
+		    }
+		}
+
+		boolean lastWindow = (windowStart + window.limit()) >= size;
+		CoderResult result = decoder.decode(window, out, lastWindow);
+		if (result.isOverflow()) {
+		    if (out.position() == off) {
+			// A surrogate pair does not fit in a one char buffer:
+			// return one half now, the other on the next read
+			CharBuffer pair = CharBuffer.allocate(2);
+			decoder.decode(window, pair, lastWindow);
+			pair.flip();
+			out.put(pair.get());
+			if (pair.hasRemaining()) {
+			    pendingChar = pair.get();
+			}
+		    }
+		    break;
+		}
+		if (window.hasRemaining()) {
+		    // A character is split across the end of the window: map
+		    // the next window starting from that character
+		    mapNextWindow();
+		}
+	    }
+
+	    int charsRead = out.position() - off;
+	    return ((charsRead == 0) && endOfFile) ? -1 : charsRead;
+	}
+    }
+
+    /**
+     * Map the next window of the file, starting at the first byte not yet
+     * decoded, in place of the current one.
+     *
+     * @return false if there are no more bytes
+     * @throws IOException
+     */
+    private boolean mapNextWindow() throws IOException {
+	long nextStart = (window == null) ? 0 : windowStart
+		+ window.position();
+	window = null;
+	if (nextStart >= size) {
+	    return false;
+	}
+	long length = Math.min(windowSize, size - nextStart);
+	window = channel.map(FileChannel.MapMode.READ_ONLY, nextStart, length);
+	windowStart = nextStart;
+	return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+	synchronized (lock) {
+	    if (closed) {
+		return;
+	    }
+	    closed = true;
+	    window = null;
+	    channel.close();
+	}
+    }
+}
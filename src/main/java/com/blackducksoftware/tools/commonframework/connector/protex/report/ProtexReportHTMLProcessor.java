@@ -36,8 +36,27 @@ import com.blackducksoftware.tools.commonframework.standard.protex.report.HocEle
  *
  */
 public class ProtexReportHTMLProcessor {
-    private static HocElement header = null;
-    private static Document doc = null;
+    /**
+     * The processor used by the static init()/getReportSectionData() methods.
+     */
+    private static ProtexReportHTMLProcessor sharedProcessor = null;
+
+    private final Document doc;
+    private HocElement header = null;
+
+    /**
+     * Parse a multi-section report. The parsed document, and the header of the
+     * section most recently extracted from it, belong to this processor, so
+     * any number of processors can be in use on different threads at the same
+     * time.
+     *
+     * @param lnr
+     *            the reader to read the report from
+     * @throws Exception
+     */
+    public ProtexReportHTMLProcessor(LineNumberReader lnr) throws Exception {
+	doc = parseDocument(lnr);
+    }
 
     /**
      * Gets the rows from buffer.
@@ -88,13 +107,9 @@ public class ProtexReportHTMLProcessor {
 
 	    AdHocParser<T> adHocParser = new AdHocParser<T>(protexServerWrapper);
 
-	    // To enable this method to be called multiple times for different
-	    // report sections, the header
-	    // is initialized each time.
-	    // If we develop the ability to generate multiple sections in
-	    // one shot, might be able to go
-	    // back to only initializing header if it's null
-	    header = adHocParser.parseHeadersFromDoc(doc, 0);
+	    // Each section has its own header, parsed from its own document, so
+	    // sections can be parsed concurrently
+	    HocElement header = adHocParser.parseHeadersFromDoc(doc, 0);
 
 	    /**
 	     * Sometimes we want to keep the HTML intact, so lets stuff the
@@ -118,37 +133,85 @@ public class ProtexReportHTMLProcessor {
     }
 
     /**
-     * Initialize the parser for parsing multi-section reports.
+     * Streams the rows from the buffer to the given row handler. Unlike
+     * getRowsFromBuffer(), the report is never held in memory in its entirety:
+     * it is read incrementally and each row is handed to the row handler as
+     * soon as it has been parsed.
      *
+     * @param <T>
+     *            the generic type
+     * @param returnRawHtml
+     *            the return raw html
      * @param lnr
+     *            the lnr
      * @param hocElementClass
+     *            the hoc element class
+     * @param rowHandler
+     *            receives the rows as they are parsed
+     * @return the number of rows passed to the row handler
      * @throws Exception
+     *             the exception
      */
-    public static <T extends HocElement> void init(LineNumberReader lnr,
-	    Class<T> hocElementClass) throws Exception {
+    public static <T extends HocElement> int processRowsFromBuffer(
+	    ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
+	    boolean returnRawHtml, LineNumberReader lnr,
+	    Class<T> hocElementClass, ReportRowHandler<T> rowHandler)
+	    throws Exception {
 	try {
-	    String htmlBody = getHtmlBody(lnr);
-
-	    /**
-	     * HACK TIME. Unfortunately while this looks messy, it is relatively
-	     * harmless. Because JSoup insists on stripping out HTML tags for
-	     * chunks of html it invariably breaks our entire parsing scheme. By
-	     * wrapping each block in a known table tag we ensure that nothing
-	     * gets stripped out. --AK
-	     */
-	    htmlBody = "<tbody><table class='reportTable'>" + htmlBody
-		    + "</table></tbody>";
-
-	    // Parse the number of HTML lines that we were able to get.
-	    doc = Jsoup.parseBodyFragment(htmlBody);
-
+	    StreamingAdHocParser<T> parser = new StreamingAdHocParser<T>();
+	    return parser.parseRows(lnr, returnRawHtml, hocElementClass, 0,
+		    rowHandler);
 	} catch (Exception e) {
-	    throw new Exception("Error processing file chunk! "
-		    + e.getMessage(), e);
-	} finally {
+	    throw new Exception("Error processing file chunk!", e);
+	}
+    }
 
+    /**
+     * Streams the rows of all sections of a multi-section report from the
+     * buffer. The section handler supplies the row handler for each section as
+     * the section starts.
+     *
+     * @param <T>
+     *            the generic type
+     * @param returnRawHtml
+     *            the return raw html
+     * @param lnr
+     *            the lnr
+     * @param hocElementClass
+     *            the hoc element class
+     * @param sectionHandler
+     *            supplies the row handler for each section
+     * @return the number of rows passed to the row handlers
+     * @throws Exception
+     *             the exception
+     */
+    public static <T extends HocElement> int processSectionsFromBuffer(
+	    ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
+	    boolean returnRawHtml, LineNumberReader lnr,
+	    Class<T> hocElementClass, ReportSectionHandler<T> sectionHandler)
+	    throws Exception {
+	try {
+	    StreamingAdHocParser<T> parser = new StreamingAdHocParser<T>();
+	    return parser.parseSections(lnr, returnRawHtml, hocElementClass,
+		    sectionHandler);
+	} catch (Exception e) {
+	    throw new Exception("Error processing file chunk!", e);
 	}
+    }
 
+    /**
+     * Initialize the parser for parsing multi-section reports.
+     *
+     * @param lnr
+     * @param hocElementClass
+     * @throws Exception
+     * @deprecated The parsed report is shared by all callers in the JVM. Use
+     *             new ProtexReportHTMLProcessor(lnr) instead.
+     */
+    @Deprecated
+    public static synchronized <T extends HocElement> void init(
+	    LineNumberReader lnr, Class<T> hocElementClass) throws Exception {
+	sharedProcessor = new ProtexReportHTMLProcessor(lnr);
     }
 
     /**
@@ -160,8 +223,34 @@ public class ProtexReportHTMLProcessor {
      * @param returnRawHtml
      * @return
      * @throws Exception
+     * @deprecated The parsed report is shared by all callers in the JVM. Use
+     *             getSectionData() on a ProtexReportHTMLProcessor instance
+     *             instead.
+     */
+    @Deprecated
+    public static synchronized <T extends HocElement> List<T> getReportSectionData(
+	    ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
+	    Class<T> hocElementClass, int targetSectionIndex,
+	    boolean returnRawHtml) throws Exception {
+	if (sharedProcessor == null) {
+	    throw new Exception(
+		    "ProtexReportHTMLProcessor.init() must be called first");
+	}
+	return sharedProcessor.getSectionData(protexServerWrapper,
+		hocElementClass, targetSectionIndex, returnRawHtml);
+    }
+
+    /**
+     * Get a given report section's worth of data from this processor's
+     * report.
+     *
+     * @param hocElementClass
+     * @param targetSectionIndex
+     * @param returnRawHtml
+     * @return
+     * @throws Exception
      */
-    public static <T extends HocElement> List<T> getReportSectionData(
+    public synchronized <T extends HocElement> List<T> getSectionData(
 	    ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
 	    Class<T> hocElementClass, int targetSectionIndex,
 	    boolean returnRawHtml) throws Exception {
@@ -189,6 +278,40 @@ public class ProtexReportHTMLProcessor {
 	return parsedRows;
     }
 
+    /**
+     * Get the header of the section most recently extracted by
+     * getSectionData().
+     *
+     * @return the header, or null if no section has been extracted
+     */
+    public synchronized HocElement getHeader() {
+	return header;
+    }
+
+    private static Document parseDocument(LineNumberReader lnr)
+	    throws Exception {
+	try {
+	    String htmlBody = getHtmlBody(lnr);
+
+	    /**
+	     * HACK TIME. Unfortunately while this looks messy, it is relatively
+	     * harmless. Because JSoup insists on stripping out HTML tags for
+	     * chunks of html it invariably breaks our entire parsing scheme. By
+	     * wrapping each block in a known table tag we ensure that nothing
+	     * gets stripped out. --AK
+	     */
+	    htmlBody = "<tbody><table class='reportTable'>" + htmlBody
+		    + "</table></tbody>";
+
+	    // Parse the number of HTML lines that we were able to get.
+	    return Jsoup.parseBodyFragment(htmlBody);
+
+	} catch (Exception e) {
+	    throw new Exception("Error processing file chunk! "
+		    + e.getMessage(), e);
+	}
+    }
+
     private static String getHtmlBody(LineNumberReader lnr) throws IOException {
 	StringBuffer buf = new StringBuffer();
 	String line = "";
@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.activation.DataHandler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.sdk.protex.report.ReportSectionType;
+
+/**
+ * A local, on-disk cache of Protex report sections. A report section only
+ * changes when its project is re-analyzed, so sections are cached by project
+ * ID, section type and the project's last analyzed date; re-analyzing a
+ * project makes its cached sections obsolete, and they are dropped as soon as
+ * a newer one is cached.
+ *
+ * The total size of the cached reports is bounded; once it is exceeded, the
+ * least recently used reports are deleted. The cache directory can be shared
+ * by successive runs: the reports already in it are picked up (in order of
+ * last use) when the cache is created. A single report larger than the whole
+ * cache is still cached, until the next report is added.
+ *
+ * Cached reports are handed out as open readers, opened while the cache is
+ * locked, so a report can't be deleted (by another thread caching or evicting
+ * a report) between being found and being opened. A report that is evicted
+ * while it is being read can still be read to the end on platforms that allow
+ * open files to be deleted; elsewhere the delete fails (and is logged), and
+ * the file is picked up again the next time the cache directory is loaded.
+ *
+ * The cache only picks up, and only deletes, files whose names it generates
+ * itself (reports.cache.*), so the directory can hold other files. Only one
+ * ReportCache should use a given directory at a time.
+ */
+public class ReportCache {
+    private static final String FILE_PREFIX = "reports.cache.";
+    private static final String REPORT_SUFFIX = ".html";
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final String KEY_SEPARATOR = "#";
+
+    /** A cached report: prefix, project ID, section type, analyzed date. */
+    private static final Pattern REPORT_PATTERN = Pattern.compile(Pattern
+	    .quote(FILE_PREFIX) + "[^#]+#(\\w+)#-?\\d+"
+	    + Pattern.quote(REPORT_SUFFIX));
+    /** A report being downloaded (File.createTempFile()). */
+    private static final Pattern PARTIAL_PATTERN = Pattern.compile(Pattern
+	    .quote(FILE_PREFIX) + "-?\\d+" + Pattern.quote(PARTIAL_SUFFIX));
+
+    /** The log. */
+    private static Logger log = LoggerFactory.getLogger(ReportCache.class
+	    .getName());
+
+    private final File directory;
+    private final long maxBytes;
+
+    /** Report file name -> size, least recently used first. */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(
+	    16, 0.75f, true);
+    private long totalBytes = 0;
+
+    /**
+     * Create a report cache, picking up any reports already in the cache
+     * directory.
+     *
+     * @param directory
+     *            the cache directory; created if it does not exist
+     * @param maxBytes
+     *            the maximum total size of the cached reports
+     * @throws IOException
+     */
+    public ReportCache(File directory, long maxBytes) throws IOException {
+	if (!directory.isDirectory() && !directory.mkdirs()) {
+	    throw new IOException("Unable to create report cache directory "
+		    + directory.getAbsolutePath());
+	}
+	this.directory = directory;
+	this.maxBytes = maxBytes;
+	load();
+    }
+
+    /**
+     * Open a reader on a cached report section. The caller must close the
+     * reader.
+     *
+     * @param projectId
+     *            the project ID
+     * @param sectionType
+     *            the section type
+     * @param lastAnalyzedDate
+     *            the date the project was last analyzed
+     * @return the reader, or null if the section is not cached
+     * @throws IOException
+     */
+    public synchronized LineNumberReader open(String projectId,
+	    ReportSectionType sectionType, Date lastAnalyzedDate)
+	    throws IOException {
+	String fileName = getFileName(projectId, sectionType, lastAnalyzedDate);
+	Long size = entries.get(fileName);
+	if (size == null) {
+	    return null;
+	}
+	File file = new File(directory, fileName);
+	if (!file.isFile()) {
+	    // Deleted behind our back
+	    entries.remove(fileName);
+	    totalBytes -= size;
+	    return null;
+	}
+	// Record the use, so the order survives into the next run
+	file.setLastModified(System.currentTimeMillis());
+	return SpooledReport.openFileReader(file);
+    }
+
+    /**
+     * Add a report section to the cache, replacing any cached version of the
+     * section from an earlier analysis of the project, and open a reader on
+     * it. The caller must close the reader.
+     *
+     * @param projectId
+     *            the project ID
+     * @param sectionType
+     *            the section type
+     * @param lastAnalyzedDate
+     *            the date the project was last analyzed
+     * @param content
+     *            the report content (Report.getFileContent())
+     * @return the reader
+     * @throws IOException
+     */
+    public LineNumberReader put(String projectId,
+	    ReportSectionType sectionType, Date lastAnalyzedDate,
+	    DataHandler content) throws IOException {
+	String fileName = getFileName(projectId, sectionType, lastAnalyzedDate);
+
+	// Download outside the lock; only the rename has to be atomic
+	File partialFile = File.createTempFile(FILE_PREFIX, PARTIAL_SUFFIX,
+		directory);
+	boolean downloaded = false;
+	try {
+	    SpooledReport.transfer(content, partialFile);
+	    downloaded = true;
+	} finally {
+	    if (!downloaded) {
+		delete(partialFile);
+	    }
+	}
+
+	File file = new File(directory, fileName);
+	synchronized (this) {
+	    removeEntries(getKeyPrefix(projectId, sectionType));
+	    Files.move(partialFile.toPath(), file.toPath(),
+		    StandardCopyOption.REPLACE_EXISTING);
+	    long size = file.length();
+	    entries.put(fileName, size);
+	    totalBytes += size;
+	    log.debug("Cached report " + fileName + " (" + size + " bytes)");
+	    // The newest report is never evicted, so it is still there
+	    evict();
+	    return SpooledReport.openFileReader(file);
+	}
+    }
+
+    /**
+     * Get the total size of the cached reports.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getSize() {
+	return totalBytes;
+    }
+
+    /**
+     * Get the number of cached reports.
+     *
+     * @return the number of reports
+     */
+    public synchronized int getReportCount() {
+	return entries.size();
+    }
+
+    /**
+     * Delete all cached reports.
+     */
+    public synchronized void clear() {
+	removeEntries("");
+    }
+
+    private void load() {
+	File[] files = directory.listFiles();
+	if (files == null) {
+	    return;
+	}
+	List<File> reports = new ArrayList<File>();
+	for (File file : files) {
+	    if (!file.isFile()) {
+		continue;
+	    }
+	    if (PARTIAL_PATTERN.matcher(file.getName()).matches()) {
+		// Left over from an interrupted download
+		delete(file);
+	    } else if (isReportFileName(file.getName())) {
+		reports.add(file);
+	    }
+	}
+	File[] sortedReports = reports.toArray(new File[reports.size()]);
+	Arrays.sort(sortedReports, new Comparator<File>() {
+	    @Override
+	    public int compare(File file1, File file2) {
+		long lastModified1 = file1.lastModified();
+		long lastModified2 = file2.lastModified();
+		return lastModified1 < lastModified2 ? -1
+			: (lastModified1 == lastModified2 ? 0 : 1);
+	    }
+	});
+	for (File report : sortedReports) {
+	    long size = report.length();
+	    entries.put(report.getName(), size);
+	    totalBytes += size;
+	}
+	log.info("Report cache " + directory.getAbsolutePath() + " contains "
+		+ entries.size() + " reports (" + totalBytes + " bytes)");
+	evict();
+    }
+
+    /**
+     * Delete least recently used reports until the cache fits in maxBytes,
+     * always keeping the most recently used one.
+     */
+    private void evict() {
+	Iterator<Map.Entry<String, Long>> iter = entries.entrySet().iterator();
+	while (totalBytes > maxBytes && entries.size() > 1) {
+	    Map.Entry<String, Long> eldest = iter.next();
+	    log.debug("Evicting cached report " + eldest.getKey());
+	    delete(new File(directory, eldest.getKey()));
+	    totalBytes -= eldest.getValue();
+	    iter.remove();
+	}
+    }
+
+    private void removeEntries(String keyPrefix) {
+	Iterator<Map.Entry<String, Long>> iter = entries.entrySet().iterator();
+	while (iter.hasNext()) {
+	    Map.Entry<String, Long> entry = iter.next();
+	    if (entry.getKey().startsWith(keyPrefix)) {
+		delete(new File(directory, entry.getKey()));
+		totalBytes -= entry.getValue();
+		iter.remove();
+	    }
+	}
+    }
+
+    private static boolean isReportFileName(String fileName) {
+	Matcher matcher = REPORT_PATTERN.matcher(fileName);
+	if (!matcher.matches()) {
+	    return false;
+	}
+	try {
+	    ReportSectionType.valueOf(matcher.group(1));
+	    return true;
+	} catch (IllegalArgumentException e) {
+	    return false;
+	}
+    }
+
+    private static String getFileName(String projectId,
+	    ReportSectionType sectionType, Date lastAnalyzedDate) {
+	return getKeyPrefix(projectId, sectionType)
+		+ lastAnalyzedDate.getTime() + REPORT_SUFFIX;
+    }
+
+    private static String getKeyPrefix(String projectId,
+	    ReportSectionType sectionType) {
+	// The separator is always encoded, so keys can't run into each other
+	try {
+	    return FILE_PREFIX + URLEncoder.encode(projectId, "UTF-8")
+		    + KEY_SEPARATOR
+		    + sectionType.name() + KEY_SEPARATOR;
+	} catch (UnsupportedEncodingException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    private static void delete(File file) {
+	if (file.exists() && !file.delete()) {
+	    log.warn("Unable to delete cached report "
+		    + file.getAbsolutePath());
+	}
+    }
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex.report;
+
+import com.blackducksoftware.tools.commonframework.standard.protex.report.HocElement;
+
+/**
+ * Receives report rows one at a time, as they are parsed. Used by the
+ * streaming report parser so that rows can be processed (written out,
+ * aggregated, etc.) without first collecting an entire report section in
+ * memory.
+ *
+ * @param <T>
+ *            the HocElement type of the rows
+ */
+public interface ReportRowHandler<T extends HocElement> {
+
+    /**
+     * Handle a single parsed row.
+     *
+     * @param row
+     *            the row
+     * @throws Exception
+     *             to abort parsing
+     */
+    public void handleRow(T row) throws Exception;
+}
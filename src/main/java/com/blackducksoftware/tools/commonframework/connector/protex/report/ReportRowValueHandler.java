@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex.report;
+
+import com.blackducksoftware.tools.commonframework.standard.protex.report.HocElement;
+
+/**
+ * A row handler that can take a row's values as they are parsed, without a
+ * HocElement being built for the row. The streaming report parser passes the
+ * rows of conforming sections to handleRow(String[], String[], int) instead
+ * of handleRow(T); a non-conforming section (a single row of label/value
+ * pairs) is still passed as a HocElement.
+ *
+ * @param <T>
+ *            the HocElement type of the rows
+ */
+public interface ReportRowValueHandler<T extends HocElement> extends
+	ReportRowHandler<T> {
+
+    /**
+     * Handle a single parsed row, given as the keys and values the row's
+     * HocElement would have been given, in the same order. If a key appears
+     * more than once, the last of its values is the row's value, as for
+     * setPair().
+     *
+     * The arrays are reused for the next row, so they must not be kept.
+     *
+     * @param keys
+     *            the keys
+     * @param values
+     *            the values
+     * @param size
+     *            the number of keys and values in the arrays
+     * @throws Exception
+     *             to abort parsing
+     */
+    public void handleRow(String[] keys, String[] values, int size)
+	    throws Exception;
+}
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex.report;
+
+import com.blackducksoftware.tools.commonframework.standard.protex.report.HocElement;
+
+/**
+ * Routes the sections of a multi-section report to row handlers. Used by the
+ * streaming report parser, which asks for a row handler as each section
+ * (report table) starts.
+ *
+ * @param <T>
+ *            the HocElement type of the rows
+ */
+public interface ReportSectionHandler<T extends HocElement> {
+
+    /**
+     * A report section has started.
+     *
+     * @param sectionIndex
+     *            the index of the section (report table) within the report
+     * @param title
+     *            the section title (its first header cell), or null if the
+     *            section has no header
+     * @return the row handler for the section's rows, or null to skip the
+     *         section
+     * @throws Exception
+     *             to abort parsing
+     */
+    public ReportRowHandler<T> startSection(int sectionIndex, String title)
+	    throws Exception;
+}
@@ -0,0 +1,464 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex.report;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jsoup.parser.Parser;
+
+/**
+ * Incremental scanner for the report tables (table class=reportTable) in a
+ * Protex ad-hoc HTML report. The report is fed to the scanner a chunk at a
+ * time, and the scanner reports header cells and body rows to a listener as
+ * they close, so only the row currently being scanned is held in memory.
+ *
+ * Cell text is extracted the same way Jsoup's Element.text() does it (entities
+ * decoded, whitespace collapsed, a space inserted before block level elements
+ * and line breaks), so the results match those of the Jsoup-based parser.
+ * Tables nested inside a report table's cells are treated as cell content.
+ */
+class ReportTableScanner {
+
+    /**
+     * Receives report table events from the scanner.
+     */
+    interface Listener {
+
+	/**
+	 * A report table has started.
+	 *
+	 * @param tableIndex
+	 *            the index of the report table within the report
+	 * @throws Exception
+	 */
+	void tableStart(int tableIndex) throws Exception;
+
+	/**
+	 * A header (thead th) cell has closed.
+	 *
+	 * @param text
+	 *            the text of the header cell
+	 * @throws Exception
+	 */
+	void headerCell(String text) throws Exception;
+
+	/**
+	 * A body (tbody tr) row has closed.
+	 *
+	 * @param cellText
+	 *            the text of each td cell in the row
+	 * @param cellHtml
+	 *            the inner HTML of each td cell in the row (empty strings
+	 *            unless the scanner was asked to collect HTML)
+	 * @throws Exception
+	 */
+	void bodyRow(List<String> cellText, List<String> cellHtml)
+		throws Exception;
+
+	/**
+	 * A report table has ended.
+	 *
+	 * @param tableIndex
+	 *            the index of the report table within the report
+	 * @return false to stop scanning
+	 * @throws Exception
+	 */
+	boolean tableEnd(int tableIndex) throws Exception;
+    }
+
+    private static final String REPORT_TABLE_CLASS = "reportTable";
+
+    private static final Pattern CLASS_ATTRIBUTE = Pattern.compile(
+	    "\\sclass\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+))",
+	    Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Elements that Jsoup's Element.text() precedes with a space (Jsoup's block
+     * tags, plus br).
+     */
+    private static final Set<String> BLOCK_TAGS = new HashSet<String>(
+	    Arrays.asList("address", "aside", "audio", "blockquote", "body",
+		    "br", "canvas", "caption", "col", "colgroup", "dd", "del",
+		    "details", "div", "dl", "dt", "fieldset", "figcaption",
+		    "figure", "footer", "form", "frame", "frameset", "h1",
+		    "h2", "h3", "h4", "h5", "h6", "head", "header", "hgroup",
+		    "hr", "html", "ins", "li", "link", "menu", "meta", "nav",
+		    "noframes", "noscript", "ol", "p", "plaintext", "pre", "s",
+		    "script", "section", "style", "table", "tbody", "td",
+		    "tfoot", "th", "thead", "title", "tr", "ul", "video"));
+
+    private static final int STATE_TEXT = 0;
+    private static final int STATE_TAG = 1;
+    private static final int STATE_COMMENT = 2;
+
+    private static final int PART_NONE = 0;
+    private static final int PART_HEAD = 1;
+    private static final int PART_BODY = 2;
+    private static final int PART_FOOT = 3;
+
+    private final Listener listener;
+    private final boolean collectHtml;
+
+    // Lexer state
+    private int state = STATE_TEXT;
+    private final StringBuilder tagBuf = new StringBuilder();
+    private char quote = 0;
+    private int commentDashes = 0;
+
+    // Table structure state. The stack holds one entry per open table.
+    private final Deque<Boolean> openTables = new ArrayDeque<Boolean>();
+    private int reportTableCount = 0;
+    private int currentTableIndex = -1;
+    private int currentTableDepth = 0;
+    private int part = PART_NONE;
+    private boolean inRow = false;
+    private boolean inCell = false;
+    private boolean cellIsHeader = false;
+    private boolean stopped = false;
+
+    private final StringBuilder cellText = new StringBuilder();
+    private final StringBuilder cellHtml = new StringBuilder();
+    private final List<String> rowText = new ArrayList<String>();
+    private final List<String> rowHtml = new ArrayList<String>();
+
+    /**
+     * Create a scanner.
+     *
+     * @param listener
+     *            receives the report table events
+     * @param collectHtml
+     *            true if the inner HTML of body cells should be collected
+     */
+    ReportTableScanner(Listener listener, boolean collectHtml) {
+	this.listener = listener;
+	this.collectHtml = collectHtml;
+    }
+
+    /**
+     * True once the listener has asked to stop scanning.
+     *
+     * @return true if scanning has stopped
+     */
+    boolean isStopped() {
+	return stopped;
+    }
+
+    /**
+     * Scan the next chunk of the report.
+     *
+     * @param chunk
+     * @throws Exception
+     */
+    void feed(CharSequence chunk) throws Exception {
+	int len = chunk.length();
+	for (int i = 0; (i < len) && !stopped; i++) {
+	    char c = chunk.charAt(i);
+	    switch (state) {
+	    case STATE_TEXT:
+		if (c == '<') {
+		    state = STATE_TAG;
+		    tagBuf.setLength(0);
+		    quote = 0;
+		} else {
+		    appendCellContent(c);
+		}
+		break;
+	    case STATE_TAG:
+		scanTagChar(c);
+		break;
+	    default:
+		scanCommentChar(c);
+		break;
+	    }
+	}
+    }
+
+    /**
+     * Signal the end of the report. Closes a report table left open by a
+     * truncated report, like a lenient HTML parser would.
+     *
+     * @throws Exception
+     */
+    void finish() throws Exception {
+	if (!stopped && (currentTableIndex >= 0)) {
+	    endReportTable();
+	}
+    }
+
+    private void scanTagChar(char c) throws Exception {
+	if (tagBuf.length() == 0) {
+	    if (!Character.isLetter(c) && (c != '/') && (c != '!')
+		    && (c != '?')) {
+		// Not markup; a bare '<' in text
+		state = STATE_TEXT;
+		appendCellContent('<');
+		if (c == '<') {
+		    state = STATE_TAG;
+		} else {
+		    appendCellContent(c);
+		}
+		return;
+	    }
+	}
+
+	if (quote != 0) {
+	    if (c == quote) {
+		quote = 0;
+	    }
+	    tagBuf.append(c);
+	    return;
+	}
+
+	if (c == '>') {
+	    state = STATE_TEXT;
+	    handleTag(tagBuf.toString());
+	    return;
+	}
+
+	if (((c == '"') || (c == '\'')) && (tagBuf.indexOf("=") >= 0)) {
+	    quote = c;
+	}
+	tagBuf.append(c);
+
+	if ((tagBuf.length() == 3) && "!--".equals(tagBuf.toString())) {
+	    state = STATE_COMMENT;
+	    commentDashes = 0;
+	}
+    }
+
+    private void scanCommentChar(char c) {
+	if (c == '-') {
+	    commentDashes++;
+	} else if ((c == '>') && (commentDashes >= 2)) {
+	    state = STATE_TEXT;
+	} else {
+	    commentDashes = 0;
+	}
+    }
+
+    private void appendCellContent(char c) {
+	if (inCell) {
+	    cellText.append(c);
+	    if (collectHtml && !cellIsHeader) {
+		cellHtml.append(c);
+	    }
+	}
+    }
+
+    private void handleTag(String rawTag) throws Exception {
+	char first = rawTag.charAt(0);
+	if ((first == '!') || (first == '?')) {
+	    return; // doctype, processing instruction
+	}
+
+	boolean closing = (first == '/');
+	String name = getTagName(rawTag, closing ? 1 : 0);
+
+	if ("table".equals(name)) {
+	    handleTableTag(rawTag, closing);
+	    return;
+	}
+
+	if ((currentTableIndex < 0)
+		|| (openTables.size() != currentTableDepth)) {
+	    handleCellContentTag(rawTag, name, closing);
+	    return;
+	}
+
+	if ("thead".equals(name)) {
+	    endRow();
+	    part = closing ? PART_NONE : PART_HEAD;
+	} else if ("tbody".equals(name)) {
+	    endRow();
+	    part = closing ? PART_NONE : PART_BODY;
+	} else if ("tfoot".equals(name)) {
+	    endRow();
+	    part = closing ? PART_NONE : PART_FOOT;
+	} else if ("tr".equals(name)) {
+	    endRow();
+	    if (!closing) {
+		startRow();
+	    }
+	} else if ("td".equals(name) || "th".equals(name)) {
+	    endCell();
+	    if (!closing) {
+		if (!inRow) {
+		    startRow();
+		}
+		inCell = true;
+		cellIsHeader = "th".equals(name);
+	    }
+	} else {
+	    handleCellContentTag(rawTag, name, closing);
+	}
+    }
+
+    private void handleTableTag(String rawTag, boolean closing)
+	    throws Exception {
+	if (!closing) {
+	    boolean isReportTable = isReportTable(rawTag);
+	    if (inCell) {
+		handleCellContentTag(rawTag, "table", false);
+	    }
+	    openTables.push(Boolean.valueOf(isReportTable));
+	    if (isReportTable && (currentTableIndex < 0)) {
+		currentTableIndex = reportTableCount++;
+		currentTableDepth = openTables.size();
+		part = PART_NONE;
+		listener.tableStart(currentTableIndex);
+	    }
+	    return;
+	}
+
+	if ((currentTableIndex >= 0)
+		&& (openTables.size() == currentTableDepth)) {
+	    endReportTable();
+	} else if (inCell) {
+	    handleCellContentTag(rawTag, "table", true);
+	}
+	if (!openTables.isEmpty()) {
+	    openTables.pop();
+	}
+    }
+
+    private void endReportTable() throws Exception {
+	endRow();
+	int tableIndex = currentTableIndex;
+	currentTableIndex = -1;
+	currentTableDepth = 0;
+	part = PART_NONE;
+	if (!listener.tableEnd(tableIndex)) {
+	    stopped = true;
+	}
+    }
+
+    private void handleCellContentTag(String rawTag, String name,
+	    boolean closing) {
+	if (!inCell) {
+	    return;
+	}
+	if (!closing && BLOCK_TAGS.contains(name)) {
+	    cellText.append(' ');
+	}
+	if (collectHtml && !cellIsHeader) {
+	    cellHtml.append('<').append(rawTag).append('>');
+	}
+    }
+
+    private void startRow() {
+	inRow = true;
+	rowText.clear();
+	rowHtml.clear();
+    }
+
+    private void endRow() throws Exception {
+	endCell();
+	if (!inRow) {
+	    return;
+	}
+	inRow = false;
+	// Jsoup moves rows found directly under the table into a tbody
+	if ((part == PART_BODY) || (part == PART_NONE)) {
+	    listener.bodyRow(rowText, rowHtml);
+	}
+    }
+
+    private void endCell() throws Exception {
+	if (!inCell) {
+	    return;
+	}
+	inCell = false;
+	String text = normalizeText(cellText);
+	cellText.setLength(0);
+	if (cellIsHeader) {
+	    if (part == PART_HEAD) {
+		listener.headerCell(text);
+	    }
+	} else if (part != PART_HEAD) {
+	    rowText.add(text);
+	    rowHtml.add(cellHtml.toString().trim());
+	}
+	cellHtml.setLength(0);
+    }
+
+    private static String getTagName(String rawTag, int start) {
+	int end = start;
+	int len = rawTag.length();
+	while (end < len) {
+	    char c = rawTag.charAt(end);
+	    if (Character.isWhitespace(c) || (c == '/')) {
+		break;
+	    }
+	    end++;
+	}
+	return rawTag.substring(start, end).toLowerCase();
+    }
+
+    private static boolean isReportTable(String rawTag) {
+	Matcher m = CLASS_ATTRIBUTE.matcher(rawTag);
+	if (!m.find()) {
+	    return false;
+	}
+	String value = m.group(1);
+	if (value == null) {
+	    value = m.group(2);
+	}
+	if (value == null) {
+	    value = m.group(3);
+	}
+	return REPORT_TABLE_CLASS.equalsIgnoreCase(value.trim());
+    }
+
+    /**
+     * Decode entities and collapse whitespace, the way Jsoup's Element.text()
+     * does.
+     *
+     * @param raw
+     * @return
+     */
+    static String normalizeText(CharSequence raw) {
+	String decoded = raw.toString();
+	if (decoded.indexOf('&') >= 0) {
+	    decoded = Parser.unescapeEntities(decoded, false);
+	}
+	StringBuilder sb = new StringBuilder(decoded.length());
+	boolean lastWasWhite = false;
+	for (int i = 0; i < decoded.length(); i++) {
+	    char c = decoded.charAt(i);
+	    if ((c == ' ') || (c == '\t') || (c == '\n') || (c == '\r')
+		    || (c == '\f')) {
+		if (!lastWasWhite) {
+		    sb.append(' ');
+		    lastWasWhite = true;
+		}
+	    } else {
+		sb.append(c);
+		lastWasWhite = false;
+	    }
+	}
+	return sb.toString().trim();
+    }
+}
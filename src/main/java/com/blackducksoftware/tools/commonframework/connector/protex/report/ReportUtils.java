@@ -19,18 +19,25 @@ package com.blackducksoftware.tools.commonframework.connector.protex.report;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
-import java.util.HashSet;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,7 +51,6 @@ import com.blackducksoftware.tools.commonframework.standard.common.ProjectPojo;
 import com.blackducksoftware.tools.commonframework.standard.protex.ProtexProjectPojo;
 import com.blackducksoftware.tools.commonframework.standard.protex.report.AdHocElement;
 import com.blackducksoftware.tools.commonframework.standard.protex.report.HocElement;
-import com.blackducksoftware.tools.commonframework.standard.protex.report.model.TemplateColumn;
 import com.blackducksoftware.tools.commonframework.standard.protex.report.model.TemplateSheet;
 import com.blackducksoftware.tools.commonframework.standard.protex.report.template.TemplateReader;
 
@@ -59,9 +65,116 @@ import com.blackducksoftware.tools.commonframework.standard.protex.report.templa
  *
  */
 public class ReportUtils {
-    private static final int MAX_CELL_STRING_LEN = 32767;
+    private static final int ROW_QUEUE_CAPACITY = 10000;
+
+    /**
+     * The section type of each report table, by title key (see getTitleKey()).
+     * Protex titles most tables after their section type, but not all of them;
+     * and it puts tables of other sections (such as the Analysis Summary) at
+     * the top of some sections.
+     */
+    private static final Map<String, ReportSectionType> SECTION_TITLES = new HashMap<String, ReportSectionType>();
+    static {
+	for (ReportSectionType sectionType : ReportSectionType.values()) {
+	    addSectionTitle(sectionType.name(), sectionType);
+	}
+	addSectionTitle("Search Patterns",
+		ReportSectionType.STRING_SEARCH_PATTERNS);
+	addSectionTitle("Searches", ReportSectionType.STRING_SEARCHES);
+	addSectionTitle("Search Hits Pending Id",
+		ReportSectionType.STRING_SEARCH_HITS_PENDING_ID);
+	addSectionTitle("Dependencies - Other Supported Languages",
+		ReportSectionType.DEPENDENCIES_NON_JAVA);
+	addSectionTitle("File Patterns",
+		ReportSectionType.FILE_DISCOVERY_PATTERNS);
+	addSectionTitle("File Name Patterns Flagged as Pending Id",
+		ReportSectionType.FILE_DISCOVERY_PATTERN_MATCHES_PENDING_IDENTIFICATION);
+	addSectionTitle("Auto Id Configurations",
+		ReportSectionType.RAPID_ID_CONFIGURATIONS);
+    }
     private Logger log = LoggerFactory.getLogger(this.getClass().getName());
 
+    /**
+     * The number of rows kept in memory per sheet when writing a streaming
+     * workbook. Zero (the default) means the workbook is built in memory.
+     */
+    private int streamingRowWindow = 0;
+
+    /** Whether reports are downloaded to temporary files before parsing. */
+    private boolean spoolReports = false;
+
+    /** The cache single-section reports are fetched from, if any. */
+    private ReportCache reportCache = null;
+
+    /**
+     * Write report workbooks through POI's streaming (SXSSF) workbook, keeping
+     * only the given number of rows per sheet in memory; the rest are flushed
+     * to temporary files. This keeps memory use flat no matter how many rows a
+     * section has, at the cost of not being able to go back to rows that have
+     * been flushed. The template must be an .xlsx file.
+     *
+     * Workbooks produced this way should be saved with writeWorkbook(), which
+     * also deletes the temporary files.
+     *
+     * @param streamingRowWindow
+     *            the number of rows per sheet to keep in memory, or 0 to build
+     *            the workbook in memory
+     */
+    public void setStreamingRowWindow(int streamingRowWindow) {
+	this.streamingRowWindow = streamingRowWindow;
+    }
+
+    /**
+     * Download each report to a temporary file (see SpooledReport) and parse
+     * it from there, rather than parsing it as it is received. The report is
+     * then never held on the heap as a whole, and the connection to Protex is
+     * released as soon as the report has been downloaded. The file is deleted
+     * once the report has been parsed.
+     *
+     * @param spoolReports
+     *            true to download reports to temporary files
+     */
+    public void setSpoolReports(boolean spoolReports) {
+	this.spoolReports = spoolReports;
+    }
+
+    /**
+     * Fetch single-section reports through a local report cache. A section is
+     * only generated on the Protex server if the cache does not already hold
+     * it for the project's current analysis (last analyzed date); projects
+     * that have never been analyzed are not cached, and neither are requests
+     * for several sections at once.
+     *
+     * @param reportCache
+     *            the report cache, or null to always generate reports
+     */
+    public void setReportCache(ReportCache reportCache) {
+	this.reportCache = reportCache;
+    }
+
+    /**
+     * Write a report workbook to a file. If the workbook is a streaming
+     * workbook, its temporary files are deleted afterwards.
+     *
+     * @param wb
+     *            the workbook
+     * @param outputFile
+     *            the file to write to
+     * @throws IOException
+     */
+    public static void writeWorkbook(Workbook wb, File outputFile)
+	    throws IOException {
+	OutputStream os = new FileOutputStream(outputFile);
+	try {
+	    wb.write(os);
+	} finally {
+	    os.close();
+	    if (wb instanceof SXSSFWorkbook) {
+		((SXSSFWorkbook) wb).dispose();
+	    }
+	}
+    }
+
     /**
      * Get a Protex report in the form of a workbook, fetching sections one at a
      * time.
@@ -81,11 +194,13 @@ public class ReportUtils {
 	// Generate a workbook from a template file, and populate the template
 	// map.
 	TemplateReader templateReader = new TemplateReader(config);
-	Workbook wb = TemplateReader.generateWorkBookFromFile(templateFile);
+	Workbook wb = createWorkbook(templateFile);
 	templateReader.populateTemplateMap();
 
 	ProjectPojo project = protexServerWrapper
 		.getProjectByName(protexProjectName);
+	Date lastAnalyzedDate = getLastAnalyzedDate(protexServerWrapper,
+		project);
 
 	Map<String, TemplateSheet> sheetMap = templateReader.getSheetMap();
 	for (String sheetKey : sheetMap.keySet()) {
@@ -93,92 +208,324 @@ public class ReportUtils {
 	    String reportSection = sheet.getSheetName();
 	    // System.out.println("Section: " + reportSection);
 
-	    List<AdHocElement> rowsToParse = getReportSection(
-		    protexServerWrapper, project, reportSection,
-		    AdHocElement.class);
-	    if (rowsToParse != null) {
-		populateSectionData(templateReader, sheet, wb, rowsToParse);
+	    // Write the rows into the sheet as they are parsed
+	    SheetSectionWriter<AdHocElement> sheetWriter = new SheetSectionWriter<AdHocElement>(
+		    sheet, wb);
+	    getReportSection(protexServerWrapper, project, lastAnalyzedDate,
+		    reportSection, AdHocElement.class, sheetWriter);
+	    if (sheetWriter.getRowCount() == 0) {
+		log.info("There is no data in this section");
 	    }
 	}
 
 	return wb;
     }
 
-    private void populateSectionData(TemplateReader templateReader,
-	    TemplateSheet templateSheet, Workbook wb,
-	    List<AdHocElement> reportRows) throws Exception {
-	Sheet sheet = wb.getSheet(templateSheet.getSheetName());
-	Map<String, TemplateColumn> columnMap = templateSheet.getColumnMap();
+    /**
+     * Get a Protex report in the form of a workbook, fetching all sections with
+     * a single report request.
+     *
+     * The report is streamed and split into sections as it is read. Each
+     * report table is routed to a template sheet by the section type its title
+     * maps to. Only the first table of each requested section type is kept:
+     * Protex repeats summary tables (such as the Analysis Summary) at the top
+     * of some sections, and those are skipped, as are tables of section types
+     * that were not requested and tables with unknown titles. Only one sheet
+     * is filled per section type.
+     *
+     * @param protexServerWrapper
+     * @param protexProjectName
+     * @param templateFile
+     * @param config
+     * @return
+     * @throws Exception
+     */
+    public Workbook getReportInSingleRequest(
+	    ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
+	    String protexProjectName, File templateFile,
+	    ConfigurationManager config) throws Exception {
 
-	/**
-	 * Grab the keys once, since we are writing out rows, the keys must
-	 * logically be identical. Verify the keys against the template, by
-	 * removing all keys that do not exist in the template.
-	 */
-	if ((reportRows == null) || (reportRows.size() == 0)) {
-	    log.info("There is no data in this section");
-	    return;
+	// Generate a workbook from a template file, and populate the template
+	// map.
+	TemplateReader templateReader = new TemplateReader(config);
+	Workbook wb = createWorkbook(templateFile);
+	templateReader.populateTemplateMap();
+
+	ProjectPojo project = protexServerWrapper
+		.getProjectByName(protexProjectName);
+
+	com.blackducksoftware.sdk.protex.report.ReportTemplateRequest reportReq = new com.blackducksoftware.sdk.protex.report.ReportTemplateRequest();
+	SectionDemultiplexer demultiplexer = new SectionDemultiplexer();
+
+	Map<String, TemplateSheet> sheetMap = templateReader.getSheetMap();
+	for (String sheetKey : sheetMap.keySet()) {
+	    TemplateSheet sheet = sheetMap.get(sheetKey);
+	    String reportSection = sheet.getSheetName();
+	    ReportSectionType sectionType = getReportSectionType(reportSection);
+	    if (sectionType == null) {
+		continue;
+	    }
+	    if (!demultiplexer.addSection(reportSection, sectionType,
+		    new SheetSectionWriter<AdHocElement>(sheet, wb))) {
+		log.warn("Section " + sectionType + " is already in the report;"
+			+ " sheet " + reportSection + " is left empty");
+		continue;
+	    }
+	    reportReq.getSections().add(createReportSection(sectionType));
+	}
+	if (reportReq.getSections().isEmpty()) {
+	    return wb;
 	}
-	Set<String> elementValueKeys = reportRows.get(0).getPairKeys();
-	elementValueKeys = verifyKeysAgainstTemplate(elementValueKeys,
-		columnMap);
+	reportReq.setTitle(protexProjectName);
+	reportReq.setName(protexProjectName);
 
-	/**
-	 * We are starting at one, because the sheet already has a header.
-	 */
-	int rownum = 1;
-	for (AdHocElement element : reportRows) {
-	    Row row = sheet.createRow(rownum);
+	LineNumberReader lnr = getLineNumberReader(protexServerWrapper,
+		project, reportReq, null);
+	try {
+	    ProtexReportHTMLProcessor.processSectionsFromBuffer(
+		    protexServerWrapper, false, lnr, AdHocElement.class,
+		    demultiplexer);
+	} finally {
+	    lnr.close();
+	}
 
-	    for (String elementValueKey : elementValueKeys) {
-		// Grab the column from the map based on name
-		TemplateColumn templateColumn = columnMap.get(elementValueKey);
+	for (DemultiplexedSection section : demultiplexer.sections
+		.values()) {
+	    if (section.sheetWriter.getRowCount() == 0) {
+		log.info("There is no data in section " + section.reportSection);
+	    }
+	}
+	return wb;
+    }
 
-		int columnPos = templateColumn.getColumnPos();
+    /**
+     * Get a Protex report in the form of a workbook, fetching up to
+     * sectionThreads sections concurrently.
+     *
+     * Each section is requested and parsed on a thread of a bounded pool. The
+     * parsed rows are handed over (through a bounded queue) to the calling
+     * thread, which is the only thread that writes to the workbook.
+     *
+     * @param protexServerWrapper
+     * @param protexProjectName
+     * @param templateFile
+     * @param config
+     * @param sectionThreads
+     *            the maximum number of sections to fetch at the same time
+     * @return
+     * @throws Exception
+     */
+    public Workbook getReportSectionBySection(
+	    final ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
+	    String protexProjectName, File templateFile,
+	    ConfigurationManager config, int sectionThreads) throws Exception {
+	if (sectionThreads <= 1) {
+	    return getReportSectionBySection(protexServerWrapper,
+		    protexProjectName, templateFile, config);
+	}
 
-		// Place the cell in the same position as the template and fill
-		// the style
-		Cell cell = row.createCell(columnPos);
-		cell.setCellStyle(templateColumn.getCellStyle());
+	// Generate a workbook from a template file, and populate the template
+	// map.
+	TemplateReader templateReader = new TemplateReader(config);
+	Workbook wb = createWorkbook(templateFile);
+	templateReader.populateTemplateMap();
 
-		String elementValue = element.getValue(elementValueKey);
-		elementValue = limitToMaxCellLen(elementValue);
-		cell.setCellValue(elementValue);
+	final ProjectPojo project = protexServerWrapper
+		.getProjectByName(protexProjectName);
+	final Date lastAnalyzedDate = getLastAnalyzedDate(protexServerWrapper,
+		project);
+
+	Map<String, TemplateSheet> sheetMap = templateReader.getSheetMap();
+	if (sheetMap.isEmpty()) {
+	    return wb;
+	}
+
+	final BlockingQueue<PendingRow> rowQueue = new ArrayBlockingQueue<PendingRow>(
+		ROW_QUEUE_CAPACITY);
+	ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+		sectionThreads, sheetMap.size()));
+	try {
+	    for (String sheetKey : sheetMap.keySet()) {
+		TemplateSheet sheet = sheetMap.get(sheetKey);
+		final String reportSection = sheet.getSheetName();
+		final SheetSectionWriter<AdHocElement> sheetWriter = new SheetSectionWriter<AdHocElement>(
+			sheet, wb);
+
+		executor.execute(new Runnable() {
+		    @Override
+		    public void run() {
+			Exception error = null;
+			try {
+			    getReportSection(protexServerWrapper, project,
+				    lastAnalyzedDate, reportSection,
+				    AdHocElement.class,
+				    new ReportRowHandler<AdHocElement>() {
+					@Override
+					public void handleRow(AdHocElement row)
+						throws Exception {
+					    putPendingRow(rowQueue,
+						    new PendingRow(reportSection,
+							    sheetWriter, row,
+							    null));
+					}
+				    });
+			} catch (Exception e) {
+			    error = e;
+			}
+
+			// Tell the writer this section is done
+			try {
+			    putPendingRow(rowQueue, new PendingRow(
+				    reportSection, sheetWriter, null, error));
+			} catch (InterruptedException e) {
+			    // The writer has given up; nobody is listening
+			}
+		    }
+		});
+	    }
+
+	    // Write the rows on this thread as they arrive
+	    int sectionsRemaining = sheetMap.size();
+	    while (sectionsRemaining > 0) {
+		PendingRow pendingRow = rowQueue.take();
+		if (pendingRow.row != null) {
+		    pendingRow.sheetWriter.handleRow(pendingRow.row);
+		    continue;
+		}
+
+		sectionsRemaining--;
+		if (pendingRow.error != null) {
+		    throw new Exception("Error getting report section "
+			    + pendingRow.reportSection + ": "
+			    + pendingRow.error.getMessage(), pendingRow.error);
+		}
+		if (pendingRow.sheetWriter.getRowCount() == 0) {
+		    log.info("There is no data in section "
+			    + pendingRow.reportSection);
+		}
 	    }
-	    rownum++;
+	} finally {
+	    executor.shutdownNow();
 	}
+
+	return wb;
     }
 
-    private static String limitToMaxCellLen(String orig) {
-	if (orig.length() > MAX_CELL_STRING_LEN) {
-	    return orig.substring(0, (MAX_CELL_STRING_LEN - 1));
+    private static void putPendingRow(BlockingQueue<PendingRow> rowQueue,
+	    PendingRow pendingRow) throws InterruptedException {
+	try {
+	    rowQueue.put(pendingRow);
+	} catch (InterruptedException e) {
+	    // Keep the thread marked as interrupted so that it does not block
+	    // again on the (no longer drained) queue
+	    Thread.currentThread().interrupt();
+	    throw e;
 	}
-	return orig;
     }
 
     /**
-     * Removes the keys that do not exist in the template
-     *
-     * @param elementValueKeys
-     * @param columnMap
-     * @return
+     * A row of a report section, on its way from the thread that fetched it to
+     * the thread that writes the workbook. A PendingRow without a row marks the
+     * end of the section.
      */
-    private Set<String> verifyKeysAgainstTemplate(Set<String> elementValueKeys,
-	    Map<String, TemplateColumn> columnMap) {
+    private static class PendingRow {
+	private final String reportSection;
+	private final SheetSectionWriter<AdHocElement> sheetWriter;
+	private final AdHocElement row;
+	private final Exception error;
+
+	private PendingRow(String reportSection,
+		SheetSectionWriter<AdHocElement> sheetWriter, AdHocElement row,
+		Exception error) {
+	    this.reportSection = reportSection;
+	    this.sheetWriter = sheetWriter;
+	    this.row = row;
+	    this.error = error;
+	}
+    }
 
-	Set<String> verifiedKeys = new HashSet<String>();
+    /**
+     * Routes the report tables of a multi-section report to the sheets of the
+     * sections that were requested, by the section type of each table's title.
+     */
+    private class SectionDemultiplexer implements
+	    ReportSectionHandler<AdHocElement> {
+	private final Map<ReportSectionType, DemultiplexedSection> sections = new LinkedHashMap<ReportSectionType, DemultiplexedSection>();
 
-	for (String key : elementValueKeys) {
-	    TemplateColumn column = columnMap.get(key);
-	    if (column == null) {
-		log.warn("The following column does not exist in our template: "
-			+ key);
-	    } else {
-		verifiedKeys.add(key);
+	/**
+	 * Add a section to route tables to.
+	 *
+	 * @return false if a section of this type has already been added
+	 */
+	private boolean addSection(String reportSection,
+		ReportSectionType sectionType,
+		SheetSectionWriter<AdHocElement> sheetWriter) {
+	    if (sections.containsKey(sectionType)) {
+		return false;
+	    }
+	    sections.put(sectionType, new DemultiplexedSection(reportSection,
+		    sheetWriter));
+	    return true;
+	}
+
+	@Override
+	public ReportRowHandler<AdHocElement> startSection(int sectionIndex,
+		String title) {
+	    ReportSectionType sectionType = SECTION_TITLES
+		    .get(getTitleKey(title));
+	    if (sectionType == null) {
+		log.warn("Skipping report table " + sectionIndex
+			+ " with unknown title: " + title);
+		return null;
+	    }
+	    DemultiplexedSection section = sections.get(sectionType);
+	    if (section == null) {
+		log.debug("Skipping report table for section " + sectionType
+			+ ", which was not requested");
+		return null;
+	    }
+	    if (section.started) {
+		log.debug("Skipping repeated report table: " + title);
+		return null;
+	    }
+	    section.started = true;
+	    return section.sheetWriter;
+	}
+    }
+
+    private static class DemultiplexedSection {
+	private final String reportSection;
+	private final SheetSectionWriter<AdHocElement> sheetWriter;
+	private boolean started = false;
+
+	private DemultiplexedSection(String reportSection,
+		SheetSectionWriter<AdHocElement> sheetWriter) {
+	    this.reportSection = reportSection;
+	    this.sheetWriter = sheetWriter;
+	}
+    }
+
+    /**
+     * Reduce a title or name to its lower case letters and digits, so that
+     * "Bill of Materials" matches BILL_OF_MATERIALS.
+     */
+    private static String getTitleKey(String title) {
+	if (title == null) {
+	    return "";
+	}
+	StringBuilder key = new StringBuilder(title.length());
+	for (int i = 0; i < title.length(); i++) {
+	    char c = title.charAt(i);
+	    if (Character.isLetterOrDigit(c)) {
+		key.append(Character.toLowerCase(c));
 	    }
 	}
+	return key.toString();
+    }
 
-	return verifiedKeys;
+    private static void addSectionTitle(String title,
+	    ReportSectionType sectionType) {
+	SECTION_TITLES.put(getTitleKey(title), sectionType);
     }
 
     /**
@@ -202,12 +549,199 @@ public class ReportUtils {
 	    ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
 	    ProjectPojo project, String reportSection, Class<T> adHocClass)
 	    throws Exception {
+	com.blackducksoftware.sdk.protex.report.ReportTemplateRequest reportReq = createReportRequest(reportSection);
+	if (reportReq == null) {
+	    return null;
+	}
+
+	LineNumberReader lnr = getLineNumberReader(protexServerWrapper,
+		project, reportReq,
+		getLastAnalyzedDate(protexServerWrapper, project));
+	try {
+	    return ProtexReportHTMLProcessor.getRowsFromBuffer(
+		    protexServerWrapper, false, lnr, adHocClass);
+	} finally {
+	    lnr.close();
+	}
+    }
+
+    /**
+     * Fetches back a specific report section, passing each row to the given
+     * row handler as soon as it has been parsed. Unlike the List-returning
+     * version, the rows of the section are never all held in memory at once.
+     *
+     * @param <T>
+     *            the generic type
+     * @param project
+     *            the project
+     * @param reportSection
+     *            the report section
+     * @param adHocClass
+     *            This must be the class (either AdHocElement or your own custom
+     *            derivation)
+     * @param rowHandler
+     *            receives the rows as they are parsed
+     * @return the number of rows passed to the row handler
+     * @throws Exception
+     *             the exception
+     */
+    public <T extends HocElement> int getReportSection(
+	    ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
+	    ProjectPojo project, String reportSection, Class<T> adHocClass,
+	    ReportRowHandler<T> rowHandler) throws Exception {
+	return getReportSection(protexServerWrapper, project,
+		getLastAnalyzedDate(protexServerWrapper, project),
+		reportSection, adHocClass, rowHandler);
+    }
+
+    /**
+     * Fetches back a specific report section, passing each row to the given
+     * row handler, using the project's last analyzed date as already fetched
+     * by the caller (see getLastAnalyzedDate()).
+     */
+    private <T extends HocElement> int getReportSection(
+	    ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
+	    ProjectPojo project, Date lastAnalyzedDate, String reportSection,
+	    Class<T> adHocClass, ReportRowHandler<T> rowHandler)
+	    throws Exception {
+	com.blackducksoftware.sdk.protex.report.ReportTemplateRequest reportReq = createReportRequest(reportSection);
+	if (reportReq == null) {
+	    return 0;
+	}
+
+	LineNumberReader lnr = getLineNumberReader(protexServerWrapper,
+		project, reportReq, lastAnalyzedDate);
+	try {
+	    return ProtexReportHTMLProcessor.processRowsFromBuffer(
+		    protexServerWrapper, false, lnr, adHocClass, rowHandler);
+	} finally {
+	    lnr.close();
+	}
+    }
+
+    /**
+     * Fetches back a specific report section in columnar form. Rather than a
+     * HocElement per row, the rows are kept in a ColumnarReportSection, which
+     * stores repeated values once, so large sections take far less memory.
+     *
+     * @param <T>
+     *            the generic type
+     * @param project
+     *            the project
+     * @param reportSection
+     *            the report section
+     * @param adHocClass
+     *            This must be the class (either AdHocElement or your own custom
+     *            derivation)
+     * @return the report section, or null if the section is not supported
+     * @throws Exception
+     *             the exception
+     */
+    public <T extends HocElement> ColumnarReportSection<T> getColumnarReportSection(
+	    ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
+	    ProjectPojo project, String reportSection, Class<T> adHocClass)
+	    throws Exception {
+	com.blackducksoftware.sdk.protex.report.ReportTemplateRequest reportReq = createReportRequest(reportSection);
+	if (reportReq == null) {
+	    return null;
+	}
+
+	ColumnarReportSection<T> section = new ColumnarReportSection<T>();
+	LineNumberReader lnr = getLineNumberReader(protexServerWrapper,
+		project, reportReq,
+		getLastAnalyzedDate(protexServerWrapper, project));
+	try {
+	    ProtexReportHTMLProcessor.processRowsFromBuffer(
+		    protexServerWrapper, false, lnr, adHocClass, section);
+	} finally {
+	    lnr.close();
+	}
+	return section;
+    }
+
+    /**
+     * Generates a specific report section and downloads it to a temporary
+     * file. The report can then be parsed as many times as needed (for
+     * example, to retry a failed parse) without generating it again:
+     *
+     * <pre>
+     * LineNumberReader lnr = spooledReport.openReader();
+     * lnr.readLine(); // Skip the first line, as ReportUtils does
+     * ProtexReportHTMLProcessor.processRowsFromBuffer(..., lnr, ...);
+     * </pre>
+     *
+     * The caller must close the spooled report to delete the file.
+     *
+     * @param project
+     *            the project
+     * @param reportSection
+     *            the report section
+     * @return the spooled report, or null if the section is not supported
+     * @throws Exception
+     *             the exception
+     */
+    public SpooledReport spoolReportSection(
+	    ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
+	    ProjectPojo project, String reportSection) throws Exception {
 	ReportApi reportAPI = protexServerWrapper.getInternalApiWrapper()
 		.getReportApi();
 
+	com.blackducksoftware.sdk.protex.report.ReportTemplateRequest reportReq = createReportRequest(reportSection);
+	if (reportReq == null) {
+	    return null;
+	}
+
+	try {
+	    Report report = reportAPI.generateAdHocProjectReport(
+		    project.getProjectKey(), reportReq, ReportFormat.HTML);
+	    return SpooledReport.spool(report.getFileContent());
+	} catch (Exception e) {
+	    throw new Exception("Error reading Protex report: "
+		    + e.getMessage());
+	}
+    }
+
+    /**
+     * Create the request for a single-section ad-hoc report.
+     *
+     * @param reportSection
+     *            the report section (template sheet) name
+     * @return the request, or null if the section is not supported
+     * @throws Exception
+     */
+    private com.blackducksoftware.sdk.protex.report.ReportTemplateRequest createReportRequest(
+	    String reportSection) throws Exception {
+	ReportSectionType sectionType = getReportSectionType(reportSection);
+	if (sectionType == null) {
+	    return null;
+	}
+
 	com.blackducksoftware.sdk.protex.report.ReportTemplateRequest reportReq = new com.blackducksoftware.sdk.protex.report.ReportTemplateRequest();
+	reportReq.getSections().add(createReportSection(sectionType));
+	reportReq.setTitle(reportSection);
+	reportReq.setName(reportSection);
+	return reportReq;
+    }
+
+    private static com.blackducksoftware.sdk.protex.report.ReportSection createReportSection(
+	    ReportSectionType sectionType) {
 	com.blackducksoftware.sdk.protex.report.ReportSection section = new com.blackducksoftware.sdk.protex.report.ReportSection();
+	section.setSectionType(sectionType);
+	section.setLabel(sectionType.name());
+	return section;
+    }
 
+    /**
+     * Determine the report section type for a report section (template sheet)
+     * name.
+     *
+     * @param reportSection
+     *            the report section (template sheet) name
+     * @return the section type, or null if the section is not supported
+     * @throws Exception
+     */
+    private ReportSectionType getReportSectionType(String reportSection)
+	    throws Exception {
 	 // Consider using translation mechanism from sheet to enum//
 	ReportSectionType sectionType = null;
 
@@ -241,45 +775,133 @@ public class ReportUtils {
 	default:
 	    break;
 	}
-	section.setSectionType(sectionType);
-	section.setLabel(sectionType.name());
-	reportReq.getSections().add(section);
-	reportReq.setTitle(reportSection);
-	reportReq.setName(reportSection);
-
-	LineNumberReader lnr = getLineNumberReader(reportAPI, project,
-		reportReq);
+	return sectionType;
+    }
 
-	return ProtexReportHTMLProcessor.getRowsFromBuffer(protexServerWrapper,
-		false, lnr, adHocClass);
+    /**
+     * Generate the workbook the report is written to from the template file.
+     * The template's sheets, header rows and styles are kept; when streaming
+     * is enabled, the workbook is wrapped in a streaming workbook.
+     *
+     * @param templateFile
+     * @return
+     * @throws Exception
+     */
+    private Workbook createWorkbook(File templateFile) throws Exception {
+	Workbook wb = TemplateReader.generateWorkBookFromFile(templateFile);
+	if (streamingRowWindow <= 0) {
+	    return wb;
+	}
+	if (!(wb instanceof XSSFWorkbook)) {
+	    log.warn("Streaming output requires an .xlsx template; "
+		    + "the workbook will be built in memory");
+	    return wb;
+	}
+	log.debug("Writing a streaming workbook; row window: "
+		+ streamingRowWindow);
+	return new SXSSFWorkbook((XSSFWorkbook) wb, streamingRowWindow);
     }
 
-    private static LineNumberReader getLineNumberReader(
-	    ReportApi reportAPI,
+    /**
+     * Open a reader on a report. A single-section report is fetched through
+     * the report cache if the project's last analyzed date is given.
+     */
+    private LineNumberReader getLineNumberReader(
+	    ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
 	    ProjectPojo project,
-	    com.blackducksoftware.sdk.protex.report.ReportTemplateRequest reportReq)
-	    throws Exception {
+	    com.blackducksoftware.sdk.protex.report.ReportTemplateRequest reportReq,
+	    Date lastAnalyzedDate) throws Exception {
+	ReportApi reportAPI = protexServerWrapper.getInternalApiWrapper()
+		.getReportApi();
 
 	InputStream is = null;
 	BufferedReader br = null;
 	LineNumberReader lnr = null;
 
 	try {
+	    if (reportCache != null && lastAnalyzedDate != null
+		    && reportReq.getSections().size() == 1) {
+		lnr = getCachedLineNumberReader(protexServerWrapper, project,
+			reportReq, lastAnalyzedDate);
+	    }
 	    if (lnr == null) {
 		Report report = reportAPI.generateAdHocProjectReport(
 			project.getProjectKey(), reportReq, ReportFormat.HTML);
 
-		is = report.getFileContent().getInputStream();
+		if (spoolReports) {
+		    lnr = SpooledReport.spool(report.getFileContent())
+			    .openSingleUseReader();
+		} else {
+		    is = report.getFileContent().getInputStream();
 
-		br = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+		    br = new BufferedReader(new InputStreamReader(is, "UTF-8"));
 
-		lnr = new LineNumberReader(br);
-		lnr.readLine();
+		    lnr = new LineNumberReader(br);
+		}
 	    }
+	    lnr.readLine();
 	} catch (Exception e) {
+	    if (lnr != null) {
+		// Release the report (and delete it, if it was spooled)
+		lnr.close();
+	    }
 	    throw new Exception("Error reading Protex report: "
 		    + e.getMessage());
 	}
 	return lnr;
     }
+
+    /**
+     * Get the date a project was last analyzed, which the report cache keys
+     * the project's reports by. Fetch it once per report, not once per
+     * section.
+     *
+     * @return the date, or null if reports are not cached, the project has
+     *         never been analyzed or the date can't be fetched
+     */
+    private Date getLastAnalyzedDate(
+	    ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
+	    ProjectPojo project) {
+	if (reportCache == null) {
+	    return null;
+	}
+	try {
+	    return protexServerWrapper.getInternalApiWrapper().getProjectApi()
+		    .getProjectById(project.getProjectKey())
+		    .getLastAnalyzedDate();
+	} catch (Exception e) {
+	    log.warn("Unable to get last analyzed date of project "
+		    + project.getProjectName() + "; not using report cache: "
+		    + e.getMessage());
+	    return null;
+	}
+    }
+
+    /**
+     * Get a reader on a single-section report from the report cache,
+     * generating the report and adding it to the cache if it is not there.
+     *
+     * @return the reader
+     * @throws Exception
+     */
+    private LineNumberReader getCachedLineNumberReader(
+	    ProtexServerWrapper<ProtexProjectPojo> protexServerWrapper,
+	    ProjectPojo project,
+	    com.blackducksoftware.sdk.protex.report.ReportTemplateRequest reportReq,
+	    Date lastAnalyzedDate) throws Exception {
+	ReportSectionType sectionType = reportReq.getSections().get(0)
+		.getSectionType();
+	LineNumberReader lnr = reportCache.open(project.getProjectKey(),
+		sectionType, lastAnalyzedDate);
+	if (lnr != null) {
+	    log.info("Using cached " + sectionType + " report for project "
+		    + project.getProjectName());
+	    return lnr;
+	}
+	Report report = protexServerWrapper.getInternalApiWrapper()
+		.getReportApi().generateAdHocProjectReport(
+			project.getProjectKey(), reportReq, ReportFormat.HTML);
+	return reportCache.put(project.getProjectKey(), sectionType,
+		lastAnalyzedDate, report.getFileContent());
+    }
 }
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex.report;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.tools.commonframework.standard.protex.report.HocElement;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.model.TemplateColumn;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.model.TemplateSheet;
+
+/**
+ * Writes report rows, as they are parsed, into a template sheet of a workbook.
+ * Each row is placed below the template's header row, each value in the
+ * column (and with the style) of the template column of the same name.
+ *
+ * @param <T>
+ *            the HocElement type of the rows
+ */
+public class SheetSectionWriter<T extends HocElement> implements
+	ReportRowHandler<T> {
+    private static final int MAX_CELL_STRING_LEN = 32767;
+    private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+    private final Sheet sheet;
+    private final Map<String, TemplateColumn> columnMap;
+    private Set<String> elementValueKeys = null;
+
+    /**
+     * We are starting at one, because the sheet already has a header.
+     */
+    private int rownum = 1;
+
+    /**
+     * Create a writer for the given template sheet.
+     *
+     * @param templateSheet
+     *            the template sheet describing the columns
+     * @param wb
+     *            the workbook containing the sheet to write to
+     */
+    public SheetSectionWriter(TemplateSheet templateSheet, Workbook wb) {
+	sheet = wb.getSheet(templateSheet.getSheetName());
+	columnMap = templateSheet.getColumnMap();
+    }
+
+    @Override
+    public void handleRow(T element) throws Exception {
+	/**
+	 * Grab the keys once, since we are writing out rows, the keys must
+	 * logically be identical. Verify the keys against the template, by
+	 * removing all keys that do not exist in the template.
+	 */
+	if (elementValueKeys == null) {
+	    elementValueKeys = verifyKeysAgainstTemplate(element.getPairKeys());
+	}
+
+	Row row = sheet.createRow(rownum);
+
+	for (String elementValueKey : elementValueKeys) {
+	    // Grab the column from the map based on name
+	    TemplateColumn templateColumn = columnMap.get(elementValueKey);
+
+	    int columnPos = templateColumn.getColumnPos();
+
+	    // Place the cell in the same position as the template and fill
+	    // the style
+	    Cell cell = row.createCell(columnPos);
+	    cell.setCellStyle(templateColumn.getCellStyle());
+
+	    String elementValue = element.getValue(elementValueKey);
+	    if (elementValue != null) {
+		elementValue = limitToMaxCellLen(elementValue);
+	    }
+	    cell.setCellValue(elementValue);
+	}
+	rownum++;
+    }
+
+    /**
+     * Get the number of rows written so far.
+     *
+     * @return the number of rows written
+     */
+    public int getRowCount() {
+	return rownum - 1;
+    }
+
+    private static String limitToMaxCellLen(String orig) {
+	if (orig.length() > MAX_CELL_STRING_LEN) {
+	    return orig.substring(0, (MAX_CELL_STRING_LEN - 1));
+	}
+	return orig;
+    }
+
+    /**
+     * Removes the keys that do not exist in the template
+     *
+     * @param keys
+     * @return
+     */
+    private Set<String> verifyKeysAgainstTemplate(Set<String> keys) {
+
+	Set<String> verifiedKeys = new HashSet<String>();
+
+	for (String key : keys) {
+	    TemplateColumn column = columnMap.get(key);
+	    if (column == null) {
+		log.warn("The following column does not exist in our template: "
+			+ key);
+	    } else {
+		verifiedKeys.add(key);
+	    }
+	}
+
+	return verifiedKeys;
+    }
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex.report;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.LineNumberReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import javax.activation.DataHandler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Protex report that has been downloaded to a temporary file. The report
+ * content is transferred from the SDK's DataHandler straight to the file
+ * through NIO channels, and read back through memory-mapped regions of the
+ * file, so a large report is never held on the heap as one giant String.
+ *
+ * The report can be read any number of times, so a failed parse can be retried
+ * without asking Protex to generate the report again. Close the
+ * SpooledReport to delete the file.
+ */
+public class SpooledReport implements Closeable {
+    private static final Charset REPORT_CHARSET = Charset.forName("UTF-8");
+
+    /** The maximum number of bytes to transfer per call. */
+    private static final long TRANSFER_CHUNK_SIZE = 8L * 1024 * 1024;
+
+    /** The log. */
+    private static Logger log = LoggerFactory.getLogger(SpooledReport.class
+	    .getName());
+
+    private final File file;
+
+    private SpooledReport(File file) {
+	this.file = file;
+    }
+
+    /**
+     * Download the report content to a temporary file.
+     *
+     * @param content
+     *            the report content (Report.getFileContent())
+     * @return the spooled report
+     * @throws IOException
+     */
+    public static SpooledReport spool(DataHandler content) throws IOException {
+	File file = Files.createTempFile("protexReport", ".html").toFile();
+	boolean spooled = false;
+	try {
+	    transfer(content, file);
+	    spooled = true;
+	} finally {
+	    if (!spooled) {
+		delete(file);
+	    }
+	}
+	return new SpooledReport(file);
+    }
+
+    /**
+     * Transfer report content to a file.
+     *
+     * @param content
+     *            the report content (Report.getFileContent())
+     * @param file
+     *            the file, which must exist
+     * @throws IOException
+     */
+    static void transfer(DataHandler content, File file) throws IOException {
+	InputStream is = content.getInputStream();
+	try {
+	    ReadableByteChannel source = Channels.newChannel(is);
+	    FileChannel target = FileChannel.open(file.toPath(),
+		    StandardOpenOption.WRITE,
+		    StandardOpenOption.TRUNCATE_EXISTING);
+	    try {
+		long position = 0;
+		long transferred;
+		while ((transferred = target.transferFrom(source, position,
+			TRANSFER_CHUNK_SIZE)) > 0) {
+		    position += transferred;
+		}
+		log.debug("Transferred " + position + " bytes of report to "
+			+ file.getAbsolutePath());
+	    } finally {
+		target.close();
+	    }
+	} finally {
+	    is.close();
+	}
+    }
+
+    /**
+     * Open a reader on a report file, reading it through memory-mapped
+     * regions of the file.
+     *
+     * @param file
+     *            the report file
+     * @return the reader
+     * @throws IOException
+     */
+    static LineNumberReader openFileReader(File file) throws IOException {
+	return new LineNumberReader(new MappedFileReader(file, REPORT_CHARSET));
+    }
+
+    /**
+     * Open a reader on the report. Each call returns a new reader, positioned
+     * at the start of the report.
+     *
+     * @return the reader
+     * @throws IOException
+     */
+    public LineNumberReader openReader() throws IOException {
+	return openFileReader(file);
+    }
+
+    /**
+     * Open a reader on the report that deletes the report when it is closed.
+     *
+     * @return the reader
+     * @throws IOException
+     */
+    LineNumberReader openSingleUseReader() throws IOException {
+	return new LineNumberReader(new MappedFileReader(file, REPORT_CHARSET)) {
+	    @Override
+	    public void close() throws IOException {
+		try {
+		    super.close();
+		} finally {
+		    SpooledReport.this.close();
+		}
+	    }
+	};
+    }
+
+    /**
+     * Get the file the report has been downloaded to.
+     *
+     * @return the file
+     */
+    public File getFile() {
+	return file;
+    }
+
+    /**
+     * Get the size of the report.
+     *
+     * @return the size in bytes
+     */
+    public long getSize() {
+	return file.length();
+    }
+
+    /**
+     * Delete the report file. Close the report's readers first: on some
+     * platforms a file can't be deleted while it is mapped.
+     */
+    @Override
+    public void close() {
+	delete(file);
+    }
+
+    private static void delete(File file) {
+	if (file.exists() && !file.delete()) {
+	    // A reader still has it mapped (the mappings go when the garbage
+	    // collector gets round to them)
+	    log.warn("Unable to delete report file " + file.getAbsolutePath()
+		    + "; it will be deleted on exit");
+	    file.deleteOnExit();
+	}
+    }
+}
@@ -0,0 +1,411 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.connector.protex.report;
+
+import java.io.LineNumberReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jsoup.nodes.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.tools.commonframework.connector.protex.InstanceFactory;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.AdHocElement;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.HocElement;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.IAdHocParser;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.ParserUtils;
+
+/**
+ * Streaming parser for Protex 6 ad-hoc HTML reports. Rather than building a
+ * Jsoup Document for the whole report, this parser reads the report from a
+ * LineNumberReader a line at a time and hands each row to a ReportRowHandler
+ * as soon as its closing tr tag has been read, so memory use stays bounded no
+ * matter how large the report is. A row handler that implements
+ * ReportRowValueHandler is given each row's keys and values instead, so no
+ * HocElement is built for the row.
+ *
+ * The rows produced are the same as those produced by AdHocParserProtex6,
+ * with one exception: when raw HTML is requested, a cell's inner HTML is
+ * returned exactly as it appears in the report, rather than as re-serialized
+ * by Jsoup.
+ *
+ * The Document-based IAdHocParser methods are delegated to
+ * AdHocParserProtex6.
+ *
+ * @param <T>
+ *            the HocElement type of the rows
+ */
+public class StreamingAdHocParser<T extends HocElement> implements
+	IAdHocParser<T> {
+
+    /** The log. */
+    private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+    private final AdHocParserProtex6<T> documentParser = new AdHocParserProtex6<T>();
+
+    private HocElement header = null;
+
+    /**
+     * Instantiates a new streaming ad hoc parser.
+     */
+    public StreamingAdHocParser() {
+    }
+
+    @Override
+    public HocElement parseHeadersFromDoc(Document doc, int targetSectionIndex)
+	    throws Exception {
+	return documentParser.parseHeadersFromDoc(doc, targetSectionIndex);
+    }
+
+    @Override
+    public ArrayList<T> parseRows(Document doc, HocElement adHocHeader,
+	    boolean returnRawHtml, Class<T> hocElementClass,
+	    int targetSectionIndex) throws Exception {
+	return documentParser.parseRows(doc, adHocHeader, returnRawHtml,
+		hocElementClass, targetSectionIndex);
+    }
+
+    /**
+     * Parse the rows of the given report section, reading the report
+     * incrementally and passing each row to the row handler as it is parsed.
+     * Reading stops once the target section has been parsed.
+     *
+     * @param lnr
+     *            the reader to read the report from
+     * @param returnRawHtml
+     *            true to return the cells' inner HTML rather than their text
+     * @param hocElementClass
+     *            the hoc element class
+     * @param targetSectionIndex
+     *            the index of the report section (report table) to parse
+     * @param rowHandler
+     *            receives the parsed rows
+     * @return the number of rows passed to the row handler
+     * @throws Exception
+     */
+    public int parseRows(LineNumberReader lnr, boolean returnRawHtml,
+	    Class<T> hocElementClass, final int targetSectionIndex,
+	    final ReportRowHandler<T> rowHandler) throws Exception {
+	try {
+	    ReportSectionHandler<T> sectionHandler = new ReportSectionHandler<T>() {
+		@Override
+		public ReportRowHandler<T> startSection(int sectionIndex,
+			String title) {
+		    return (sectionIndex == targetSectionIndex) ? rowHandler
+			    : null;
+		}
+	    };
+	    SectionListener listener = new SectionListener(returnRawHtml,
+		    hocElementClass, sectionHandler, true);
+	    scan(lnr, listener, returnRawHtml);
+
+	    if (listener.getSectionCount() == 0) {
+		log.error("Error parsing headers");
+		throw new Exception("Report section " + targetSectionIndex
+			+ " not found in report");
+	    }
+
+	    log.debug("Number of rows parsed: " + listener.getRowCount());
+	    return listener.getRowCount();
+	} catch (Exception e) {
+	    log.error("Error parsing rows");
+	    throw e;
+	}
+    }
+
+    /**
+     * Parse the rows of all sections of a multi-section report, reading the
+     * report incrementally. As each section starts, the section handler is
+     * asked for the row handler that will receive the section's rows.
+     *
+     * @param lnr
+     *            the reader to read the report from
+     * @param returnRawHtml
+     *            true to return the cells' inner HTML rather than their text
+     * @param hocElementClass
+     *            the hoc element class
+     * @param sectionHandler
+     *            supplies the row handler for each section
+     * @return the number of rows passed to the row handlers
+     * @throws Exception
+     */
+    public int parseSections(LineNumberReader lnr, boolean returnRawHtml,
+	    Class<T> hocElementClass, ReportSectionHandler<T> sectionHandler)
+	    throws Exception {
+	try {
+	    SectionListener listener = new SectionListener(returnRawHtml,
+		    hocElementClass, sectionHandler, false);
+	    scan(lnr, listener, returnRawHtml);
+
+	    log.debug("Number of sections parsed: "
+		    + listener.getSectionCount() + "; number of rows parsed: "
+		    + listener.getRowCount());
+	    return listener.getRowCount();
+	} catch (Exception e) {
+	    log.error("Error parsing rows");
+	    throw e;
+	}
+    }
+
+    private void scan(LineNumberReader lnr, SectionListener listener,
+	    boolean returnRawHtml) throws Exception {
+	ReportTableScanner scanner = new ReportTableScanner(listener,
+		returnRawHtml);
+
+	String line;
+	while (!scanner.isStopped() && ((line = lnr.readLine()) != null)) {
+	    scanner.feed(line);
+	}
+	scanner.finish();
+    }
+
+    /**
+     * Get the header of the most recently parsed report section.
+     *
+     * @return the header, or null if no section has been parsed
+     */
+    public HocElement getHeader() {
+	return header;
+    }
+
+    /**
+     * Set the pair for one row of a "non-conforming" report section: the label
+     * is in the cell to the left of the value. This follows the cell selection
+     * used by AdHocParserProtex6: with more than two cells, the label/value
+     * are in the second/third cells.
+     *
+     * @param adHocRow
+     * @param cellText
+     */
+    private void setNonConformingPair(T adHocRow, List<String> cellText) {
+	int elementCount = cellText.size();
+	String label;
+	String value;
+	if (elementCount > 2) {
+	    label = cellText.get(1);
+	    value = cellText.get(2);
+	} else if (elementCount == 2) {
+	    label = cellText.get(0);
+	    value = cellText.get(1);
+	} else {
+	    return;
+	}
+	adHocRow.setPair(label, ParserUtils.decode(value));
+	if (log.isDebugEnabled()) {
+	    log.debug("Set Pair: " + label + " : " + value);
+	}
+    }
+
+    /**
+     * Turns report table events into rows, passing the rows of each section
+     * to the row handler the section handler supplies for it.
+     */
+    private class SectionListener implements ReportTableScanner.Listener {
+	private final boolean returnRawHtml;
+	private final InstanceFactory<T> rowFactory;
+	private final ReportSectionHandler<T> sectionHandler;
+	private final boolean stopAfterFirstSection;
+
+	private int sectionCount = 0;
+	private int rowCount = 0;
+
+	// The state of the current section
+	private int currentTableIndex = -1;
+	private HocElement sectionHeader = null;
+	private boolean handlerResolved = false;
+	private ReportRowHandler<T> rowHandler = null;
+	private ReportRowValueHandler<T> rowValueHandler = null;
+	private String[] rowKeys = null;
+	private String[] rowValues = null;
+	private int headerPosition = 0;
+	private String[] columnKeys = null;
+	private T nonConformingRow = null;
+	private int counter = 0;
+
+	SectionListener(boolean returnRawHtml, Class<T> hocElementClass,
+		ReportSectionHandler<T> sectionHandler,
+		boolean stopAfterFirstSection) throws Exception {
+	    this.returnRawHtml = returnRawHtml;
+	    rowFactory = InstanceFactory.forClass(hocElementClass);
+	    this.sectionHandler = sectionHandler;
+	    this.stopAfterFirstSection = stopAfterFirstSection;
+	}
+
+	/**
+	 * Get the number of sections that were passed to a row handler.
+	 */
+	int getSectionCount() {
+	    return sectionCount;
+	}
+
+	int getRowCount() {
+	    return rowCount;
+	}
+
+	@Override
+	public void tableStart(int tableIndex) throws Exception {
+	    handlerResolved = false;
+	    rowHandler = null;
+	    rowValueHandler = null;
+	    currentTableIndex = tableIndex;
+	    sectionHeader = new AdHocElement();
+	    headerPosition = 0;
+	    columnKeys = null;
+	    nonConformingRow = null;
+	    counter = 0;
+	}
+
+	@Override
+	public void headerCell(String text) throws Exception {
+	    // Start with position 0 as it is a bogus header
+	    // When we do the matching of the rows, we will start at 1.
+	    sectionHeader.setCoordinate(headerPosition++, text);
+	    if (!isTargetSection()) {
+		return;
+	    }
+	    if (log.isDebugEnabled()) {
+		log.debug("Header column: " + text);
+	    }
+	}
+
+	@Override
+	public void bodyRow(List<String> cellText, List<String> cellHtml)
+		throws Exception {
+	    if (!isTargetSection()) {
+		return;
+	    }
+	    if (columnKeys == null) {
+		columnKeys = getColumnKeys();
+	    }
+
+	    if (columnKeys.length <= 1) {
+		// Non-conforming: data labels are to the left of the values,
+		// and the whole section becomes a single row
+		if (nonConformingRow == null) {
+		    nonConformingRow = rowFactory.newInstance();
+		    nonConformingRow.setPair("counter", "0");
+		}
+		setNonConformingPair(nonConformingRow, cellText);
+		return;
+	    }
+
+	    List<String> values = returnRawHtml ? cellHtml : cellText;
+	    if (rowValueHandler != null) {
+		handleRowValues(values);
+		counter++;
+		return;
+	    }
+
+	    T adHocRow = rowFactory.newInstance();
+	    adHocRow.setPair("counter", String.valueOf(counter));
+	    int cellCount = values.size();
+	    for (int i = 0; i < cellCount; i++) {
+		int position = i + 1;
+		String headerKey = (position < columnKeys.length) ? columnKeys[position]
+			: sectionHeader.getCoordinate(position);
+		adHocRow.setPair(headerKey,
+			ParserUtils.decode(values.get(i)));
+	    }
+
+	    if (AdHocParserProtex6.rowContainsValidData(adHocRow, sectionHeader)) {
+		rowHandler.handleRow(adHocRow);
+		rowCount++;
+	    }
+	    counter++;
+	}
+
+	@Override
+	public boolean tableEnd(int tableIndex) throws Exception {
+	    if (!isTargetSection()) {
+		return true;
+	    }
+	    if (columnKeys == null) {
+		columnKeys = getColumnKeys();
+	    }
+	    if (columnKeys.length <= 1) {
+		log.info("Parsed Non-Conforming Section");
+		if (nonConformingRow == null) {
+		    nonConformingRow = rowFactory.newInstance();
+		    nonConformingRow.setPair("counter", "0");
+		}
+		rowHandler.handleRow(nonConformingRow);
+		rowCount++;
+	    } else {
+		log.info("Parsed Conforming Section. adHocHeader size = "
+			+ columnKeys.length + " ; row count = " + counter);
+	    }
+	    // Stop reading if we were only after this section
+	    return !stopAfterFirstSection;
+	}
+
+	/**
+	 * Pass a row of a conforming section to the row value handler, with the
+	 * same keys and values its HocElement would have had.
+	 */
+	private void handleRowValues(List<String> values) throws Exception {
+	    int size = values.size() + 1;
+	    if ((rowKeys == null) || (rowKeys.length < size)) {
+		rowKeys = new String[size];
+		rowValues = new String[size];
+	    }
+	    rowKeys[0] = "counter";
+	    rowValues[0] = String.valueOf(counter);
+	    for (int i = 1; i < size; i++) {
+		rowKeys[i] = (i < columnKeys.length) ? columnKeys[i]
+			: sectionHeader.getCoordinate(i);
+		rowValues[i] = ParserUtils.decode(values.get(i - 1));
+	    }
+
+	    if (AdHocParserProtex6.rowContainsValidData(rowKeys, rowValues,
+		    size, sectionHeader)) {
+		rowValueHandler.handleRow(rowKeys, rowValues, size);
+		rowCount++;
+	    }
+	}
+
+	/**
+	 * Determine, once the section's title is known, whether the rows of the
+	 * current section are wanted.
+	 */
+	private boolean isTargetSection() throws Exception {
+	    if (!handlerResolved) {
+		handlerResolved = true;
+		rowHandler = sectionHandler.startSection(currentTableIndex,
+			sectionHeader.getCoordinate(0));
+		if (rowHandler instanceof ReportRowValueHandler) {
+		    rowValueHandler = (ReportRowValueHandler<T>) rowHandler;
+		}
+		if (rowHandler != null) {
+		    header = sectionHeader;
+		    sectionCount++;
+		}
+	    }
+	    return rowHandler != null;
+	}
+
+	private String[] getColumnKeys() {
+	    log.debug("Number of headers parsed: " + sectionHeader.getSize());
+	    String[] keys = new String[sectionHeader.getSize()];
+	    for (int position = 0; position < keys.length; position++) {
+		keys[position] = sectionHeader.getCoordinate(position);
+	    }
+	    return keys;
+	}
+    }
+}
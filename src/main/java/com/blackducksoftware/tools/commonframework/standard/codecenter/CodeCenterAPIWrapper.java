@@ -26,12 +26,18 @@ import com.blackducksoftware.sdk.codecenter.settings.SettingsApi;
 import com.blackducksoftware.sdk.codecenter.user.UserApi;
 import com.blackducksoftware.sdk.codecenter.vulnerability.VulnerabilityApi;
 import com.blackducksoftware.tools.commonframework.connector.protex.APIWrapper;
+import com.blackducksoftware.tools.commonframework.connector.protex.LazyInitializer;
 import com.blackducksoftware.tools.commonframework.core.config.ConfigurationManager;
 import com.blackducksoftware.tools.commonframework.core.config.server.ServerBean;
 
 
 /**
  * The Class CodeCenterAPIWrapper.
+ *
+ * The API stubs are not built by the constructor, but by the first call to
+ * their getters. A stub that can't be built (the server's WSDL can't be
+ * fetched, for example) therefore fails with a runtime exception from its
+ * getter, not from the constructor; the next call to the getter tries again.
  */
 public class CodeCenterAPIWrapper extends APIWrapper {
 
@@ -39,24 +45,69 @@ public class CodeCenterAPIWrapper extends APIWrapper {
     /** The cc proxy. */
     private CodeCenterServerProxyV6_6_0 ccProxy;
 
+    // The API stubs are built on first use, so that a tool only pays for the
+    // APIs it actually uses
+
     /** The vulnerability api. */
-    private VulnerabilityApi vulnerabilityApi;
+    private final LazyInitializer<VulnerabilityApi> vulnerabilityApi = new LazyInitializer<VulnerabilityApi>() {
+	@Override
+	protected VulnerabilityApi create() {
+	    return disableCertificateCheck(ccProxy.getVulnerabilityApi(),
+		    VulnerabilityApi.class);
+	}
+    };
 
     /** The application api. */
-    private ApplicationApi applicationApi;
+    private final LazyInitializer<ApplicationApi> applicationApi = new LazyInitializer<ApplicationApi>() {
+	@Override
+	protected ApplicationApi create() {
+	    return disableCertificateCheck(ccProxy.getApplicationApi(),
+		    ApplicationApi.class);
+	}
+    };
 
     /** The user api. */
-    private UserApi userApi;
+    private final LazyInitializer<UserApi> userApi = new LazyInitializer<UserApi>() {
+	@Override
+	protected UserApi create() {
+	    return disableCertificateCheck(ccProxy.getUserApi(),
+		    UserApi.class);
+	}
+    };
 
     /** The cola api. */
-    private ColaApi colaApi;
+    private final LazyInitializer<ColaApi> colaApi = new LazyInitializer<ColaApi>() {
+	@Override
+	protected ColaApi create() {
+	    return disableCertificateCheck(ccProxy.getColaApi(),
+		    ColaApi.class);
+	}
+    };
 
     /** The attribute api. */
-    private AttributeApi attributeApi;
+    private final LazyInitializer<AttributeApi> attributeApi = new LazyInitializer<AttributeApi>() {
+	@Override
+	protected AttributeApi create() {
+	    return disableCertificateCheck(ccProxy.getAttributeApi(),
+		    AttributeApi.class);
+	}
+    };
 
-    private RequestApi requestApi;
+    private final LazyInitializer<RequestApi> requestApi = new LazyInitializer<RequestApi>() {
+	@Override
+	protected RequestApi create() {
+	    return disableCertificateCheck(ccProxy.getRequestApi(),
+		    RequestApi.class);
+	}
+    };
 
-    private SettingsApi settingsApi;
+    private final LazyInitializer<SettingsApi> settingsApi = new LazyInitializer<SettingsApi>() {
+	@Override
+	protected SettingsApi create() {
+	    return disableCertificateCheck(ccProxy.getSettingsApi(),
+		    SettingsApi.class);
+	}
+    };
 
     public CodeCenterAPIWrapper(ServerBean bean, ConfigurationManager manager)
 	    throws Exception {
@@ -87,22 +138,6 @@ public class CodeCenterAPIWrapper extends APIWrapper {
 	String errorMessage = "";
 	try {
 	    ccProxy = new CodeCenterServerProxyV6_6_0(server, user, password);
-
-	    vulnerabilityApi = super.disableCertificateCheck(
-		    ccProxy.getVulnerabilityApi(), VulnerabilityApi.class);
-	    applicationApi = super.disableCertificateCheck(
-		    ccProxy.getApplicationApi(), ApplicationApi.class);
-	    userApi = super.disableCertificateCheck(ccProxy.getUserApi(),
-		    UserApi.class);
-	    colaApi = super.disableCertificateCheck(ccProxy.getColaApi(),
-		    ColaApi.class);
-	    attributeApi = super.disableCertificateCheck(
-		    ccProxy.getAttributeApi(), AttributeApi.class);
-	    requestApi = super.disableCertificateCheck(ccProxy.getRequestApi(),
-		    RequestApi.class);
-	    settingsApi = super.disableCertificateCheck(
-		    ccProxy.getSettingsApi(), SettingsApi.class);
-
 	} catch (Exception e) {
 	    errorMessage = e.getMessage();
 	    if (e.getCause() != null) {
@@ -117,31 +152,31 @@ public class CodeCenterAPIWrapper extends APIWrapper {
     }
 
     public VulnerabilityApi getVulnerabilityApi() {
-	return vulnerabilityApi;
+	return vulnerabilityApi.get();
     }
 
     public ApplicationApi getApplicationApi() {
-	return applicationApi;
+	return applicationApi.get();
     }
 
     public UserApi getUserApi() {
-	return userApi;
+	return userApi.get();
     }
 
     public ColaApi getColaApi() {
-	return colaApi;
+	return colaApi.get();
     }
 
     public AttributeApi getAttributeApi() {
-	return attributeApi;
+	return attributeApi.get();
     }
 
     public RequestApi getRequestApi() {
-	return requestApi;
+	return requestApi.get();
     }
 
     public SettingsApi getSettingsApi() {
-	return settingsApi;
+	return settingsApi.get();
     }
 
 }
@@ -18,9 +18,8 @@
 package com.blackducksoftware.tools.commonframework.standard.codecenter.dao;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -34,6 +33,9 @@ import com.blackducksoftware.tools.commonframework.standard.codecenter.pojo.Appl
 import com.blackducksoftware.tools.commonframework.standard.codecenter.pojo.ComponentPojo;
 import com.blackducksoftware.tools.commonframework.standard.codecenter.pojo.ComponentUsePojo;
 import com.blackducksoftware.tools.commonframework.standard.codecenter.pojo.VulnerabilityPojo;
+import com.blackducksoftware.tools.commonframework.standard.common.cache.BoundedCache;
+import com.blackducksoftware.tools.commonframework.standard.common.cache.Cache;
+import com.blackducksoftware.tools.commonframework.standard.common.cache.Weigher;
 
 @SuppressWarnings("deprecation")
 public class CodeCenter6_6_1Dao implements ApplicationData6_6_1Dao {
@@ -46,12 +48,15 @@ public class CodeCenter6_6_1Dao implements ApplicationData6_6_1Dao {
 							       // hard coded at
 							       // all
     private final CodeCenter6_6_1SdkDao ccSdkDao;
-   
+
+    // The DbDao shares one database connection, so its methods are called
+    // with the DbDao locked, in case this DAO is used by more than one thread
     private final CodeCenter6_6_1DbDao ccDbDao;
-    private Map<String, List<VulnerabilityPojo>> compVulnCache; // cache of
-								// vulnerabilities
-								// per Component
-								// ID
+    private static final int MIN_VULN_CACHE_WEIGHT = 100000;
+    private Cache<String, List<VulnerabilityPojo>> compVulnCache; // cache of
+								  // vulnerabilities
+								  // per
+								  // Component ID
 
 
     public CodeCenter6_6_1Dao(CodeCenterDaoConfigManager config)
@@ -90,9 +95,53 @@ public class CodeCenter6_6_1Dao implements ApplicationData6_6_1Dao {
 	ccSdkDao.setSkipNonKbComponents(skipNonKbComponents);
     }
 
+    /**
+     * Set the cache of vulnerabilities by KB component release (see
+     * CodeCenter6_6_1SdkDao.setKbReleaseVulnerabilityCache()).
+     *
+     * @param kbReleaseVulnCache
+     */
+    public void setKbReleaseVulnerabilityCache(
+	    KbReleaseVulnerabilityCache kbReleaseVulnCache) {
+	ccSdkDao.setKbReleaseVulnerabilityCache(kbReleaseVulnCache);
+    }
+
+    /**
+     * Set the cache of vulnerability lists, by component ID. By default it is
+     * bounded by the total number of vulnerabilities: the larger of 100000 and
+     * the estimated number of vulnerabilities in all applications (see
+     * getVulnerabilityListWeigher()). Lists that have been evicted are fetched
+     * again when needed.
+     *
+     * @param compVulnCache
+     */
+    public void setVulnerabilityCache(
+	    Cache<String, List<VulnerabilityPojo>> compVulnCache) {
+	this.compVulnCache = compVulnCache;
+    }
+
+    /**
+     * Get a weigher that weighs a vulnerability list by its length, for use
+     * with a custom vulnerability cache.
+     *
+     * @return the weigher
+     */
+    public static Weigher<String, List<VulnerabilityPojo>> getVulnerabilityListWeigher() {
+	return new Weigher<String, List<VulnerabilityPojo>>() {
+	    @Override
+	    public int weigh(String componentId, List<VulnerabilityPojo> vulns) {
+		// Components without vulnerabilities are worth caching too
+		return vulns.size() + 1;
+	    }
+	};
+    }
+
     private void init(int estNumApps) {
-	compVulnCache = new HashMap<String, List<VulnerabilityPojo>>(estNumApps
-		* EST_NUM_COMPONENTS_PER_APP * EST_NUM_VULNS_PER_COMPONENT);
+	compVulnCache = new BoundedCache<String, List<VulnerabilityPojo>>(
+		Math.max(MIN_VULN_CACHE_WEIGHT, (long) estNumApps
+			* EST_NUM_COMPONENTS_PER_APP
+			* EST_NUM_VULNS_PER_COMPONENT), 0,
+		getVulnerabilityListWeigher());
     }
 
     @Override
@@ -105,6 +154,18 @@ public class CodeCenter6_6_1Dao implements ApplicationData6_6_1Dao {
 	return ccSdkDao.getApplications();
     }
 
+    /**
+     * Get the applications a page at a time, prefetching the next page (see
+     * CodeCenter6_6_1SdkDao.getApplicationIterator()).
+     *
+     * @param pageSize
+     *            the number of applications per request
+     * @return an iterator over the applications
+     */
+    public Iterator<ApplicationPojo> getApplicationIterator(int pageSize) {
+	return ccSdkDao.getApplicationIterator(pageSize);
+    }
+
     @Override
     public ApplicationPojo getApplication(String appName, String version)
 	    throws Exception {
@@ -154,15 +215,19 @@ public class CodeCenter6_6_1Dao implements ApplicationData6_6_1Dao {
 	vulnPojos = getVulnListFromCache(compPojo.getId());
 	if (vulnPojos != null) {
 	    // The vuln status fields vary per-use, so need to be set every time
-	    for (VulnerabilityPojo vuln : vulnPojos) {
-		ccDbDao.setVulnStatusFields(vuln, compUsePojo);
+	    synchronized (ccDbDao) {
+		for (VulnerabilityPojo vuln : vulnPojos) {
+		    ccDbDao.setVulnStatusFields(vuln, compUsePojo);
+		}
 	    }
 	    return vulnPojos;
 	}
 
 	vulnPojos = ccSdkDao.getVulnerabilitiesSdkFields(compPojo, compUsePojo);
-	for (VulnerabilityPojo vuln : vulnPojos) {
-	    ccDbDao.setDbFields(vuln, compUsePojo);
+	synchronized (ccDbDao) {
+	    for (VulnerabilityPojo vuln : vulnPojos) {
+		ccDbDao.setDbFields(vuln, compUsePojo);
+	    }
 	}
 	log.info("Vulnerabilities retrieved from Code Center for component: "
 		+ compPojo.getName() + " / " + compPojo.getVersion());
@@ -173,9 +238,8 @@ public class CodeCenter6_6_1Dao implements ApplicationData6_6_1Dao {
     }
 
     List<VulnerabilityPojo> getVulnListFromCache(String componentId) {
-	List<VulnerabilityPojo> vulnPojos;
-	if (compVulnCache.containsKey(componentId)) {
-	    vulnPojos = compVulnCache.get(componentId);
+	List<VulnerabilityPojo> vulnPojos = compVulnCache.get(componentId);
+	if (vulnPojos != null) {
 	    log.info("Vulnerabilities retrieved from cache for component: "
 		    + componentId);
 	    return vulnPojos;
@@ -204,7 +268,8 @@ public class CodeCenter6_6_1Dao implements ApplicationData6_6_1Dao {
     @Override
     public void updateCompUseVulnData(ComponentUsePojo compUse,
 	    VulnerabilityPojo vuln) throws Exception {
-	ccDbDao.updateCompUseVulnData(compUse, vuln);
-
+	synchronized (ccDbDao) {
+	    ccDbDao.updateCompUseVulnData(compUse, vuln);
+	}
     }
 }
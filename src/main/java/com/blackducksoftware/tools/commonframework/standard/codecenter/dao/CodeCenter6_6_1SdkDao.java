@@ -19,8 +19,20 @@ package com.blackducksoftware.tools.commonframework.standard.codecenter.dao;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +53,8 @@ import com.blackducksoftware.sdk.codecenter.cola.data.KbComponentReleaseIdToken;
 import com.blackducksoftware.sdk.codecenter.cola.data.KbComponentReleaseNameVersionOrIdToken;
 import com.blackducksoftware.sdk.codecenter.common.data.AttributeValue;
 import com.blackducksoftware.sdk.codecenter.fault.SdkFault;
+import com.blackducksoftware.sdk.codecenter.request.RequestApi;
+import com.blackducksoftware.sdk.codecenter.request.data.RequestIdToken;
 import com.blackducksoftware.sdk.codecenter.request.data.RequestSummary;
 import com.blackducksoftware.sdk.codecenter.vulnerability.VulnerabilityApi;
 import com.blackducksoftware.sdk.codecenter.vulnerability.data.VulnerabilityPageFilter;
@@ -56,23 +70,38 @@ import com.blackducksoftware.tools.commonframework.standard.codecenter.pojo.Comp
 import com.blackducksoftware.tools.commonframework.standard.codecenter.pojo.ComponentUsePojoImpl;
 import com.blackducksoftware.tools.commonframework.standard.codecenter.pojo.VulnerabilityPojo;
 import com.blackducksoftware.tools.commonframework.standard.codecenter.pojo.VulnerabilityPojoImpl;
+import com.blackducksoftware.tools.commonframework.standard.common.cache.BoundedCache;
+import com.blackducksoftware.tools.commonframework.standard.common.cache.Cache;
 
 public class CodeCenter6_6_1SdkDao {
     private static final int EST_NUM_COMPONENTS_PER_APP = 30;
+    private static final int MIN_CACHE_SIZE = 1000;
+    private static final int DEFAULT_KB_RELEASE_VULN_CACHE_SIZE = 100000;
+    private static final long IDLE_THREAD_SECONDS = 60;
+    private static final int DEFAULT_COMPONENT_LOOKUP_THREADS = 4;
+    private static final int COMPONENT_LOOKUP_BATCH_SIZE = 10;
     private Logger log = LoggerFactory.getLogger(this.getClass().getName());
     private ApplicationApi applicationApi;
+    private RequestApi requestApi;
     private ColaApi colaApi;
     private VulnerabilityApi vulnApi;
     private AttributeApi attrApi;
     private int applicationsLastRowIndex = Integer.MAX_VALUE;
     private int vulnerabilityLastRowIndex = Integer.MAX_VALUE;
-    private Map<ApplicationPojo, Application> appCache; // cache, so we don't
-							// have to keep going
-							// back to protex
-    private Map<String, Component> compCache; // cache, so we don't have to keep
-					      // going back to protex
-    private Map<ComponentUsePojo, RequestSummary> compUseCache;
+    private Cache<ApplicationPojo, Application> appCache; // cache, so we
+							  // don't have to keep
+							  // going back to
+							  // Code Center
+    private Cache<String, Component> compCache; // cache, so we don't have to
+						// keep going back to Code
+						// Center
+    // Component use (request) ID -> catalog component ID; a use that has been
+    // evicted is looked up again
+    private Cache<String, String> compUseCache;
     private boolean skipNonKbComponents = true;
+    private int componentLookupThreads = DEFAULT_COMPONENT_LOOKUP_THREADS;
+    private KbReleaseVulnerabilityCache kbReleaseVulnCache;
+    private ExecutorService componentLookupExecutor;
 
     // Attribute IDs for the attributes we'll need to collect values for
     private Map<String, String> appAttrNameIdMap = new HashMap<String, String>(
@@ -119,12 +148,66 @@ public class CodeCenter6_6_1SdkDao {
 	this.skipNonKbComponents = skipNonKbComponents;
     }
 
+    /**
+     * Set the number of catalog components getComponentUses() looks up at the
+     * same time (default 4; 1 to look them up one at a time, as needed).
+     *
+     * @param componentLookupThreads
+     */
+    public synchronized void setComponentLookupThreads(
+	    int componentLookupThreads) {
+	this.componentLookupThreads = Math.max(1, componentLookupThreads);
+	// Not shut down: a getComponentUses() call in progress may still be
+	// submitting to it. Its threads go away once idle, and the next lookup
+	// creates an executor of the new size.
+	componentLookupExecutor = null;
+    }
+
+    /**
+     * Set the cache of applications, which by default holds the larger of
+     * 1000 and the estimated number of applications. Entries that have been
+     * evicted are fetched again when needed.
+     *
+     * @param appCache
+     */
+    public void setApplicationCache(Cache<ApplicationPojo, Application> appCache) {
+	this.appCache = appCache;
+    }
+
+    /**
+     * Set the cache of catalog components, by component ID. By default it
+     * holds the larger of 1000 and the estimated number of component uses.
+     * Entries that have been evicted are fetched again when needed.
+     *
+     * @param compCache
+     */
+    public void setComponentCache(Cache<String, Component> compCache) {
+	this.compCache = compCache;
+    }
+
+    /**
+     * Set the cache of vulnerabilities by KB component release. By default
+     * each DAO has its own in-memory cache of up to 100000 vulnerabilities;
+     * to share the vulnerabilities between DAOs, or between runs, set the
+     * same cache (saved to a file) on each of them.
+     *
+     * @param kbReleaseVulnCache
+     */
+    public void setKbReleaseVulnerabilityCache(
+	    KbReleaseVulnerabilityCache kbReleaseVulnCache) {
+	this.kbReleaseVulnCache = kbReleaseVulnCache;
+    }
+
+    // The caches may be used by several threads (see CcAppCompVuln)
     private void initCaches(int estNumApps) {
-	appCache = new HashMap<ApplicationPojo, Application>(estNumApps);
-	compUseCache = new HashMap<ComponentUsePojo, RequestSummary>(estNumApps
-		* EST_NUM_COMPONENTS_PER_APP);
-	compCache = new HashMap<String, Component>(estNumApps
-		* EST_NUM_COMPONENTS_PER_APP);
+	appCache = new BoundedCache<ApplicationPojo, Application>(Math.max(
+		MIN_CACHE_SIZE, estNumApps));
+	compUseCache = new BoundedCache<String, String>(Math.max(
+		MIN_CACHE_SIZE, (long) estNumApps * EST_NUM_COMPONENTS_PER_APP));
+	compCache = new BoundedCache<String, Component>(Math.max(
+		MIN_CACHE_SIZE, (long) estNumApps * EST_NUM_COMPONENTS_PER_APP));
+	kbReleaseVulnCache = new KbReleaseVulnerabilityCache(
+		DEFAULT_KB_RELEASE_VULN_CACHE_SIZE, 0);
     }
 
     /**
@@ -149,25 +232,34 @@ public class CodeCenter6_6_1SdkDao {
 	List<ApplicationPojo> appPojos = new ArrayList<ApplicationPojo>(
 		applications.size());
 	for (Application app : applications) {
-	    log.debug("Application name: " + app.getName());
-
-	    Map<String, String> appAttrNameValueMap = new HashMap<String, String>(
-		    8);
-	    collectCustomAttrs(appAttrNameValueMap, app);
-
-	    ApplicationPojo appPojo = new ApplicationPojoImpl(app.getId()
-		    .getId(), app.getName(), app.getVersion(),
-		    app.getDescription(), appAttrNameValueMap);
-	    appPojos.add(appPojo);
-	    appCache.put(appPojo, app); // cache it
-
-	    log.debug("Application ID: " + app.getId().getId());
-	    log.debug("Application Component ID: "
-		    + app.getApplicationComponentId().getId());
+	    appPojos.add(toApplicationPojo(app));
 	}
 	return appPojos;
     }
 
+    /**
+     * Get the applications a page at a time, rather than in a single
+     * response. While the applications of one page are being consumed, the
+     * next page is fetched in the background, so only about two pages are in
+     * memory at a time. As for getApplications(), at most the number of
+     * applications set by limitNumberOfApplications() are returned.
+     *
+     * Because the pages are separate requests, applications added or removed
+     * during the iteration may be skipped or returned twice. The iterator is
+     * not thread safe. If a page can't be fetched, next() throws a
+     * RuntimeException wrapping the SdkFault.
+     *
+     * @param pageSize
+     *            the number of applications per request
+     * @return an iterator over the applications
+     */
+    public Iterator<ApplicationPojo> getApplicationIterator(int pageSize) {
+	if (pageSize < 1) {
+	    throw new IllegalArgumentException("pageSize must be at least 1");
+	}
+	return new ApplicationPageIterator(pageSize);
+    }
+
     public ApplicationPojo getApplication(String appName, String version)
 	    throws Exception {
 
@@ -176,18 +268,29 @@ public class CodeCenter6_6_1SdkDao {
 	token.setName(appName);
 	token.setVersion(version);
 	Application app = applicationApi.getApplication(token);
+	appPojo = toApplicationPojo(app);
+
+	return appPojo;
+    }
+
+    /**
+     * Build the ApplicationPojo for an application, and cache the
+     * application.
+     */
+    private ApplicationPojo toApplicationPojo(Application app) {
+	log.debug("Application name: " + app.getName());
 
 	Map<String, String> appAttrNameValueMap = new HashMap<String, String>(8);
 	collectCustomAttrs(appAttrNameValueMap, app);
 
-	appPojo = new ApplicationPojoImpl(app.getId().getId(), app.getName(),
-		app.getVersion(), app.getDescription(), appAttrNameValueMap);
+	ApplicationPojo appPojo = new ApplicationPojoImpl(app.getId().getId(),
+		app.getName(), app.getVersion(), app.getDescription(),
+		appAttrNameValueMap);
 	appCache.put(appPojo, app); // cache it
 
 	log.debug("Application ID: " + app.getId().getId());
 	log.debug("Application Component ID: "
 		+ app.getApplicationComponentId().getId());
-
 	return appPojo;
     }
 
@@ -210,16 +313,17 @@ public class CodeCenter6_6_1SdkDao {
 	log.debug("Getting requests for app " + app.getName());
 	List<RequestSummary> requests = applicationApi
 		.getApplicationRequests(app.getId());
+	// Everyone who lists the uses goes on to get their components
+	prefetchComponents(requests);
+
 	List<ComponentUsePojo> compUsePojos = new ArrayList<ComponentUsePojo>(
 		requests.size());
 	for (RequestSummary request : requests) {
 
 	    if (skipNonKbComponents) {
-		// Peek ahead at the component: Is comp in KB? If not, skip
-		log.debug("Looking up catalog component for app");
-		ComponentIdToken componentIdToken = request.getComponentId();
-		Component component = colaApi
-			.getCatalogComponent(componentIdToken);
+		// Is comp in KB? If not, skip
+		Component component = getComponent(request.getComponentId()
+			.getId());
 		KbComponentReleaseIdToken kbComponentReleaseIdToken1 = component
 			.getKbReleaseId();
 		if (kbComponentReleaseIdToken1 == null) {
@@ -229,13 +333,13 @@ public class CodeCenter6_6_1SdkDao {
 			    + "; The KB Component Release ID token is null");
 		    continue;
 		}
-		log.debug("Found catalog component for app");
 	    }
 
 	    ComponentUsePojo compUsePojo = new ComponentUsePojoImpl(request
 		    .getId().getId());
 	    compUsePojos.add(compUsePojo);
-	    compUseCache.put(compUsePojo, request);
+	    compUseCache.put(compUsePojo.getId(), request.getComponentId()
+		    .getId());
 	}
 	return compUsePojos;
     }
@@ -243,10 +347,15 @@ public class CodeCenter6_6_1SdkDao {
     public ComponentPojo getComponent(ComponentUsePojo compUsePojo)
 	    throws SdkFault {
 	log.debug("Getting component for compUse ID: " + compUsePojo.getId());
-	RequestSummary request = compUseCache.get(compUsePojo);
-
-	ComponentIdToken componentIdToken = request.getComponentId();
-	Component component = getComponent(componentIdToken.getId());
+	String componentId = compUseCache.get(compUsePojo.getId());
+	if (componentId == null) {
+	    RequestIdToken requestIdToken = new RequestIdToken();
+	    requestIdToken.setId(compUsePojo.getId());
+	    componentId = requestApi.getRequest(requestIdToken)
+		    .getComponentId().getId();
+	    compUseCache.put(compUsePojo.getId(), componentId);
+	}
+	Component component = getComponent(componentId);
 
 	KbComponentIdToken kbCompIdToken = component.getKbComponentId();
 	String kbComponentId;
@@ -256,9 +365,8 @@ public class CodeCenter6_6_1SdkDao {
 	    kbComponentId = kbCompIdToken.getId();
 	}
 
-	ComponentPojo compPojo = new ComponentPojoImpl(
-		componentIdToken.getId(), component.getName(),
-		component.getVersion(), kbComponentId);
+	ComponentPojo compPojo = new ComponentPojoImpl(componentId,
+		component.getName(), component.getVersion(), kbComponentId);
 	return compPojo;
     }
 
@@ -271,11 +379,9 @@ public class CodeCenter6_6_1SdkDao {
      */
     Component getComponent(String id) throws SdkFault {
 	log.debug("Getting component with ID: " + id);
-	Component component;
+	Component component = compCache.get(id);
 
-	if (compCache.containsKey(id)) {
-
-	    component = compCache.get(id);
+	if (component != null) {
 	    log.debug("Component retrieved from cache: " + component.getName()
 		    + " v" + component.getVersion() + " [" + id + "]");
 	} else {
@@ -290,6 +396,96 @@ public class CodeCenter6_6_1SdkDao {
 	return component;
     }
 
+    /**
+     * Look up the catalog components of the given requests that are not
+     * cached yet, in parallel batches, and cache them.
+     */
+    private void prefetchComponents(List<RequestSummary> requests)
+	    throws SdkFault {
+	Set<String> ids = new LinkedHashSet<String>();
+	for (RequestSummary request : requests) {
+	    String id = request.getComponentId().getId();
+	    if (compCache.get(id) == null) {
+		ids.add(id);
+	    }
+	}
+	ExecutorService executor = getComponentLookupExecutor();
+	if (executor == null || ids.size() <= 1) {
+	    return;
+	}
+	log.debug("Looking up " + ids.size() + " catalog components");
+
+	List<String> idList = new ArrayList<String>(ids);
+	int batchSize = COMPONENT_LOOKUP_BATCH_SIZE;
+	List<Future<Void>> futures = new ArrayList<Future<Void>>();
+	try {
+	    for (int start = 0; start < idList.size(); start += batchSize) {
+		final List<String> batch = idList.subList(start,
+			Math.min(start + batchSize, idList.size()));
+		futures.add(executor.submit(new Callable<Void>() {
+		    @Override
+		    public Void call() throws SdkFault {
+			for (String id : batch) {
+			    getComponent(id);
+			}
+			return null;
+		    }
+		}));
+	    }
+	    for (Future<Void> future : futures) {
+		future.get();
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new RuntimeException(
+		    "Interrupted while looking up catalog components", e);
+	} catch (ExecutionException e) {
+	    Throwable cause = e.getCause();
+	    if (cause instanceof SdkFault) {
+		throw (SdkFault) cause;
+	    }
+	    if (cause instanceof RuntimeException) {
+		throw (RuntimeException) cause;
+	    }
+	    throw new RuntimeException(cause);
+	} finally {
+	    for (Future<Void> future : futures) {
+		future.cancel(true);
+	    }
+	}
+    }
+
+    private synchronized ExecutorService getComponentLookupExecutor() {
+	if (componentLookupThreads == 1) {
+	    return null;
+	}
+	if (componentLookupExecutor == null) {
+	    // The DAO has no close(), so the threads must not outlive it
+	    componentLookupExecutor = newDaemonExecutor(componentLookupThreads,
+		    "ComponentLookup");
+	}
+	return componentLookupExecutor;
+    }
+
+    /**
+     * Create a pool of daemon threads that go away when idle.
+     */
+    private static ExecutorService newDaemonExecutor(int threads,
+	    final String name) {
+	ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+		IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+		new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+		    @Override
+		    public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, name);
+			thread.setDaemon(true);
+			return thread;
+		    }
+		});
+	pool.allowCoreThreadTimeOut(true);
+	return pool;
+    }
+
     /**
      * Put a component in the cache, for unit test use only.
      *
@@ -327,22 +523,31 @@ public class CodeCenter6_6_1SdkDao {
 	    throws Exception {
 	List<VulnerabilityPojo> vulnPojos;
 
-	Component comp = compCache.get(compPojo.getId()); // get the Code Center
-							  // component from the
-							  // cache
+	Component comp = getComponent(compPojo.getId()); // get the Code Center
+							 // component from the
+							 // cache
 	String componentName = comp.getNameVersion().getName();
 	String componentVersion = comp.getNameVersion().getVersion();
 	log.debug("\tComponent: " + componentName + " version "
 		+ componentVersion);
 
-	VulnerabilityPageFilter vFilter = new VulnerabilityPageFilter();
-	vFilter.setFirstRowIndex(0);
-	vFilter.setLastRowIndex(vulnerabilityLastRowIndex);
-	KbComponentReleaseNameVersionOrIdToken kbCompRelToken = colaApi
-		.getKbComponentRelease(comp.getKbReleaseId()).getId();
-	List<VulnerabilitySummary> vSums = vulnApi
-		.searchDirectMatchedVulnerabilitiesByKBComponentReleaseId(
-			kbCompRelToken, vFilter);
+	// Many components share a KB release, so its vulnerabilities are cached
+	String kbReleaseId = comp.getKbReleaseId().getId();
+	List<VulnerabilitySummary> vSums = kbReleaseVulnCache.get(kbReleaseId);
+	if (vSums == null) {
+	    VulnerabilityPageFilter vFilter = new VulnerabilityPageFilter();
+	    vFilter.setFirstRowIndex(0);
+	    vFilter.setLastRowIndex(vulnerabilityLastRowIndex);
+	    KbComponentReleaseNameVersionOrIdToken kbCompRelToken = colaApi
+		    .getKbComponentRelease(comp.getKbReleaseId()).getId();
+	    vSums = vulnApi
+		    .searchDirectMatchedVulnerabilitiesByKBComponentReleaseId(
+			    kbCompRelToken, vFilter);
+	    kbReleaseVulnCache.put(kbReleaseId, vSums);
+	} else {
+	    log.debug("Vulnerabilities retrieved from cache for KB release: "
+		    + kbReleaseId);
+	}
 	vulnPojos = new ArrayList<VulnerabilityPojo>(vSums.size());
 	for (VulnerabilitySummary vSum : vSums) {
 	    log.debug("vulnApi.searchDirectMatchedVulnerabilitiesByKBComponentReleaseId returned: "
@@ -398,9 +603,102 @@ public class CodeCenter6_6_1SdkDao {
     private void initCodeCenterApis(CodeCenterServerWrapper ccServerWrapper) {
 	applicationApi = ccServerWrapper.getInternalApiWrapper()
 		.getApplicationApi();
+	requestApi = ccServerWrapper.getInternalApiWrapper().getRequestApi();
 	colaApi = ccServerWrapper.getInternalApiWrapper().getColaApi();
 	vulnApi = ccServerWrapper.getInternalApiWrapper().getVulnerabilityApi();
 	attrApi = ccServerWrapper.getInternalApiWrapper().getAttributeApi();
     }
 
+    /**
+     * Iterates over the applications a page at a time, fetching the next page
+     * on a background thread.
+     */
+    private class ApplicationPageIterator implements Iterator<ApplicationPojo> {
+	private final int pageSize;
+	private final ExecutorService executor;
+	private Iterator<Application> page;
+	private Future<List<Application>> nextPage;
+	private int nextPageStart = 0;
+
+	private ApplicationPageIterator(int pageSize) {
+	    this.pageSize = pageSize;
+	    // The iteration may be abandoned, so the thread must not outlive it
+	    executor = newDaemonExecutor(1, "ApplicationPageIterator");
+	    nextPage = fetchPage();
+	}
+
+	@Override
+	public boolean hasNext() {
+	    while (page == null || !page.hasNext()) {
+		if (nextPage == null) {
+		    return false;
+		}
+		List<Application> applications = getPage(nextPage);
+		if (applications.size() < pageSize
+			|| nextPageStart >= applicationsLastRowIndex) {
+		    // That was the last page
+		    nextPage = null;
+		    executor.shutdown();
+		} else {
+		    nextPage = fetchPage();
+		}
+		page = applications.iterator();
+	    }
+	    return true;
+	}
+
+	@Override
+	public ApplicationPojo next() {
+	    if (!hasNext()) {
+		throw new NoSuchElementException();
+	    }
+	    return toApplicationPojo(page.next());
+	}
+
+	@Override
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
+
+	/*
+	 * The last row index is taken to be exclusive, as getApplications()
+	 * takes it (limitNumberOfApplications(n) gives n applications): a page
+	 * is rows firstRowIndex to lastRowIndex - 1, and the next page starts
+	 * at lastRowIndex, so no application is returned twice.
+	 */
+	private Future<List<Application>> fetchPage() {
+	    final int firstRowIndex = nextPageStart;
+	    final int lastRowIndex = (int) Math.min(applicationsLastRowIndex,
+		    (long) firstRowIndex + pageSize);
+	    nextPageStart = lastRowIndex;
+	    return executor.submit(new Callable<List<Application>>() {
+		@Override
+		public List<Application> call() throws SdkFault {
+		    log.debug("Getting applications " + firstRowIndex + " to "
+			    + lastRowIndex);
+		    ApplicationPageFilter filter = new ApplicationPageFilter();
+		    filter.setFirstRowIndex(firstRowIndex);
+		    filter.setLastRowIndex(lastRowIndex);
+		    return applicationApi.searchApplications("", filter);
+		}
+	    });
+	}
+
+	private List<Application> getPage(Future<List<Application>> future) {
+	    try {
+		return future.get();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		executor.shutdownNow();
+		nextPage = null;
+		throw new RuntimeException(
+			"Interrupted while getting applications", e);
+	    } catch (ExecutionException e) {
+		executor.shutdownNow();
+		nextPage = null;
+		throw new RuntimeException("Error getting applications: "
+			+ e.getCause().getMessage(), e.getCause());
+	    }
+	}
+    }
 }
@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.standard.codecenter.dao;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.sdk.codecenter.vulnerability.data.ObjectFactory;
+import com.blackducksoftware.sdk.codecenter.vulnerability.data.VulnerabilitySummary;
+import com.blackducksoftware.tools.commonframework.standard.common.cache.BoundedCache;
+import com.blackducksoftware.tools.commonframework.standard.common.cache.Weigher;
+
+/**
+ * A cache of the vulnerabilities of KB component releases, by KB component
+ * release ID. Many catalog components (across many applications) map to the
+ * same KB release, so with this cache a vulnerability scan makes one
+ * vulnerability query per distinct KB release rather than one per component.
+ * One cache can be shared by several DAOs (see
+ * CodeCenter6_6_1SdkDao.setKbReleaseVulnerabilityCache()).
+ *
+ * The cache is bounded by the total number of vulnerabilities, and entries
+ * can be given a maximum age, after which the vulnerabilities are fetched
+ * again. The cache can be saved to a file and loaded by the next run; entries
+ * keep their age across runs. The file holds the vulnerability summaries as
+ * XML, in the form the SDK receives them.
+ */
+public class KbReleaseVulnerabilityCache {
+    private static final String ROOT_ELEMENT = "kbReleaseVulnerabilities";
+    private static final String RELEASE_ELEMENT = "release";
+    private static final String VULNERABILITY_ELEMENT = "vulnerability";
+    private static final String ID_ATTRIBUTE = "id";
+    private static final String FETCHED_ATTRIBUTE = "fetched";
+    private static final String TEMP_SUFFIX = ".part";
+
+    /** The log. */
+    private static Logger log = LoggerFactory
+	    .getLogger(KbReleaseVulnerabilityCache.class.getName());
+
+    private static JAXBContext jaxbContext;
+
+    private final long maxAgeMillis;
+    private final File file;
+    private final BoundedCache<String, Entry> cache;
+
+    /**
+     * Create an in-memory cache.
+     *
+     * @param maxVulnerabilities
+     *            the maximum total number of vulnerabilities cached
+     * @param maxAgeMillis
+     *            how long the vulnerabilities of a release are used before
+     *            they are fetched again, or 0 for no limit
+     */
+    public KbReleaseVulnerabilityCache(long maxVulnerabilities,
+	    long maxAgeMillis) {
+	this(maxVulnerabilities, maxAgeMillis, null);
+    }
+
+    /**
+     * Create a cache that can be saved to a file, loading the entries already
+     * saved in it (if it exists). If the file can't be read, the cache starts
+     * out empty.
+     *
+     * @param maxVulnerabilities
+     *            the maximum total number of vulnerabilities cached
+     * @param maxAgeMillis
+     *            how long the vulnerabilities of a release are used before
+     *            they are fetched again, or 0 for no limit
+     * @param file
+     *            the file the cache is loaded from and saved to, or null for
+     *            an in-memory cache
+     */
+    public KbReleaseVulnerabilityCache(long maxVulnerabilities,
+	    long maxAgeMillis, File file) {
+	this.maxAgeMillis = maxAgeMillis;
+	this.file = file;
+	cache = new BoundedCache<String, Entry>(maxVulnerabilities, 0,
+		new Weigher<String, Entry>() {
+		    @Override
+		    public int weigh(String kbReleaseId, Entry entry) {
+			// Releases without vulnerabilities are worth caching
+			return entry.vulnerabilities.size() + 1;
+		    }
+		});
+	if (file != null && file.isFile()) {
+	    try {
+		load();
+	    } catch (Exception e) {
+		log.warn("Unable to load the KB release vulnerability cache from "
+			+ file.getAbsolutePath() + ": " + e.getMessage());
+		cache.clear();
+	    }
+	}
+    }
+
+    /**
+     * Get the cached vulnerabilities of a KB component release.
+     *
+     * @param kbReleaseId
+     *            the KB component release ID
+     * @return the vulnerabilities, or null if they are not cached (or are too
+     *         old)
+     */
+    public List<VulnerabilitySummary> get(String kbReleaseId) {
+	Entry entry = cache.get(kbReleaseId);
+	if (entry == null) {
+	    return null;
+	}
+	if (isTooOld(entry, System.currentTimeMillis())) {
+	    cache.remove(kbReleaseId);
+	    return null;
+	}
+	return entry.vulnerabilities;
+    }
+
+    /**
+     * Cache the vulnerabilities of a KB component release.
+     *
+     * @param kbReleaseId
+     *            the KB component release ID
+     * @param vulnerabilities
+     *            the vulnerabilities
+     */
+    public void put(String kbReleaseId,
+	    List<VulnerabilitySummary> vulnerabilities) {
+	cache.put(kbReleaseId, new Entry(System.currentTimeMillis(),
+		vulnerabilities));
+    }
+
+    /**
+     * Get the number of KB releases cached.
+     *
+     * @return the number of releases
+     */
+    public int size() {
+	return cache.size();
+    }
+
+    /**
+     * Save the cache to its file, replacing the file.
+     *
+     * @throws IOException
+     *             if the cache has no file, or it can't be written
+     */
+    public synchronized void save() throws IOException {
+	if (file == null) {
+	    throw new IOException(
+		    "The KB release vulnerability cache has no file");
+	}
+	long now = System.currentTimeMillis();
+	Map<String, Entry> entries = cache.getEntries();
+
+	File tempFile = new File(file.getPath() + TEMP_SUFFIX);
+	OutputStream out = new BufferedOutputStream(new FileOutputStream(
+		tempFile));
+	boolean written = false;
+	try {
+	    XMLStreamWriter writer = XMLOutputFactory.newInstance()
+		    .createXMLStreamWriter(out, "UTF-8");
+	    Marshaller marshaller = getJaxbContext().createMarshaller();
+	    marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+
+	    writer.writeStartDocument("UTF-8", "1.0");
+	    writer.writeStartElement(ROOT_ELEMENT);
+	    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+		if (isTooOld(entry.getValue(), now)) {
+		    continue;
+		}
+		writer.writeStartElement(RELEASE_ELEMENT);
+		writer.writeAttribute(ID_ATTRIBUTE, entry.getKey());
+		writer.writeAttribute(FETCHED_ATTRIBUTE,
+			String.valueOf(entry.getValue().fetched));
+		for (VulnerabilitySummary vulnerability : entry.getValue().vulnerabilities) {
+		    marshaller.marshal(new JAXBElement<VulnerabilitySummary>(
+			    new QName(VULNERABILITY_ELEMENT),
+			    VulnerabilitySummary.class, vulnerability), writer);
+		}
+		writer.writeEndElement();
+	    }
+	    writer.writeEndElement();
+	    writer.writeEndDocument();
+	    writer.close();
+	    written = true;
+	} catch (XMLStreamException e) {
+	    throw new IOException("Error writing " + tempFile.getAbsolutePath()
+		    + ": " + e.getMessage(), e);
+	} catch (JAXBException e) {
+	    throw new IOException("Error writing " + tempFile.getAbsolutePath()
+		    + ": " + e.getMessage(), e);
+	} finally {
+	    out.close();
+	    if (!written && !tempFile.delete()) {
+		log.warn("Unable to delete " + tempFile.getAbsolutePath());
+	    }
+	}
+	Files.move(tempFile.toPath(), file.toPath(),
+		StandardCopyOption.REPLACE_EXISTING);
+	log.info("Saved the vulnerabilities of " + entries.size()
+		+ " KB releases to " + file.getAbsolutePath());
+    }
+
+    private void load() throws IOException, XMLStreamException,
+	    JAXBException {
+	long now = System.currentTimeMillis();
+	InputStream in = new BufferedInputStream(new FileInputStream(file));
+	try {
+	    XMLStreamReader reader = XMLInputFactory.newInstance()
+		    .createXMLStreamReader(in);
+	    Unmarshaller unmarshaller = getJaxbContext().createUnmarshaller();
+	    String kbReleaseId = null;
+	    long fetched = 0;
+	    List<VulnerabilitySummary> vulnerabilities = null;
+	    while (reader.hasNext()) {
+		if (reader.isStartElement()) {
+		    if (RELEASE_ELEMENT.equals(reader.getLocalName())) {
+			kbReleaseId = reader.getAttributeValue(null,
+				ID_ATTRIBUTE);
+			fetched = Long.parseLong(reader.getAttributeValue(null,
+				FETCHED_ATTRIBUTE));
+			vulnerabilities = new ArrayList<VulnerabilitySummary>();
+		    } else if (VULNERABILITY_ELEMENT.equals(reader
+			    .getLocalName())) {
+			// Leaves the reader after the element
+			vulnerabilities.add(unmarshaller.unmarshal(reader,
+				VulnerabilitySummary.class).getValue());
+			continue;
+		    }
+		} else if (reader.isEndElement()
+			&& RELEASE_ELEMENT.equals(reader.getLocalName())) {
+		    Entry entry = new Entry(fetched, vulnerabilities);
+		    if (!isTooOld(entry, now)) {
+			cache.put(kbReleaseId, entry);
+		    }
+		}
+		reader.next();
+	    }
+	    reader.close();
+	} finally {
+	    in.close();
+	}
+	log.info("Loaded the vulnerabilities of " + cache.size()
+		+ " KB releases from " + file.getAbsolutePath());
+    }
+
+    private boolean isTooOld(Entry entry, long now) {
+	return maxAgeMillis > 0 && now - entry.fetched > maxAgeMillis;
+    }
+
+    /**
+     * Get the JAXB context, built (as the SDK builds it) from the ObjectFactory
+     * of the vulnerability data package, so it knows every type a summary can
+     * refer to.
+     */
+    private static synchronized JAXBContext getJaxbContext()
+	    throws JAXBException {
+	if (jaxbContext == null) {
+	    jaxbContext = JAXBContext.newInstance(ObjectFactory.class);
+	}
+	return jaxbContext;
+    }
+
+    /** The vulnerabilities of a KB release, and when they were fetched. */
+    private static class Entry {
+	private final long fetched;
+	private final List<VulnerabilitySummary> vulnerabilities;
+
+	private Entry(long fetched, List<VulnerabilitySummary> vulnerabilities) {
+	    this.fetched = fetched;
+	    this.vulnerabilities = Collections
+		    .unmodifiableList(vulnerabilities);
+	}
+    }
+}
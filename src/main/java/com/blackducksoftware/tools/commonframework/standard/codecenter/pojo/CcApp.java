@@ -50,6 +50,7 @@ public class CcApp implements ProjectOrApp {
     private String version;
     private String workflowName;
     private CodeCenterServerWrapper ccServerWrapper;
+    private int vulnCollectionThreads = 1;
 
     public CcApp(CodeCenterDaoConfigManager config, String name,
 	    String version, String workflowName)
@@ -82,6 +83,17 @@ public class CcApp implements ProjectOrApp {
 	app = loadApp(name, version);
     }
 
+    /**
+     * Set the number of threads used to collect and apply the vulnerability
+     * metadata when the app is cloned (default 1). More threads make cloning
+     * an app with many components faster.
+     *
+     * @param vulnCollectionThreads
+     */
+    public void setVulnCollectionThreads(int vulnCollectionThreads) {
+	this.vulnCollectionThreads = vulnCollectionThreads;
+    }
+
     private Application loadApp(String name, String version)
 	    throws CommonFrameworkException {
 	ApplicationNameVersionToken appToken = new ApplicationNameVersionToken();
@@ -121,7 +133,7 @@ public class CcApp implements ProjectOrApp {
 	log.info("Collecting vulnerability data");
 	CcAppCompVuln vulnMetadataProcessor = null;
 	try {
-	    vulnMetadataProcessor = new CcAppCompVuln();
+	    vulnMetadataProcessor = new CcAppCompVuln(vulnCollectionThreads);
 	    vulnMetadataProcessor.collectVulnerabilityMetadata(config,
 		    getName(), app.getVersion());
 	} catch (Exception e) {
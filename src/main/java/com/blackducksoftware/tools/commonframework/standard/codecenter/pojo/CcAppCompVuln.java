@@ -18,10 +18,17 @@
 
 package com.blackducksoftware.tools.commonframework.standard.codecenter.pojo;
 
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,13 +37,37 @@ import com.blackducksoftware.tools.commonframework.standard.codecenter.dao.Appli
 import com.blackducksoftware.tools.commonframework.standard.codecenter.dao.CodeCenter6_6_1Dao;
 import com.blackducksoftware.tools.commonframework.standard.codecenter.dao.CodeCenterDaoConfigManager;
 
+/**
+ * Collects the componentuse vulnerability metadata (remediation dates, status
+ * and comment) of an app, and applies it to another app (a clone).
+ *
+ * By default the component uses are processed one at a time. With more than
+ * one thread, the components of the uses are looked up concurrently, and then
+ * the uses are processed concurrently, grouped by component: the DAO caches
+ * the vulnerability list of each component and sets the per-use fields on the
+ * cached objects, so the uses of a given component are always processed one
+ * after another, on the same thread.
+ */
 @SuppressWarnings("deprecation")
 public class CcAppCompVuln {
     private Logger log = LoggerFactory.getLogger(this.getClass().getName());
-    private Map<String, VulnerabilityPojo> vulnMap;
+    private final Map<String, VulnerabilityPojo> vulnMap;
+    private final int threads;
 
     public CcAppCompVuln() {
-	vulnMap = new HashMap<String, VulnerabilityPojo>(1000);
+	this(1);
+    }
+
+    /**
+     * Create a CcAppCompVuln that processes component uses concurrently.
+     *
+     * @param threads
+     *            the number of component uses to process at the same time (1
+     *            to process them one at a time)
+     */
+    public CcAppCompVuln(int threads) {
+	vulnMap = new ConcurrentHashMap<String, VulnerabilityPojo>(1000);
+	this.threads = Math.max(1, threads);
     }
 
     /**
@@ -123,11 +154,104 @@ public class CcAppCompVuln {
 	return vulnMap;
     }
 
-    private void collectDataApplication(ApplicationData6_6_1Dao dataSource,
-	    ApplicationPojo app, boolean writeMode) throws Exception {
-	List<ComponentUsePojo> compUses = dataSource.getComponentUses(app);
-	for (ComponentUsePojo compUse : compUses) {
-	    collectDataComponentUse(dataSource, app, compUse, writeMode);
+    private void collectDataApplication(
+	    final ApplicationData6_6_1Dao dataSource, final ApplicationPojo app,
+	    final boolean writeMode) throws Exception {
+	final List<ComponentUsePojo> compUses = dataSource.getComponentUses(app);
+	if (threads == 1 || compUses.size() <= 1) {
+	    for (ComponentUsePojo compUse : compUses) {
+		collectDataComponentUse(dataSource, app, compUse, writeMode);
+	    }
+	    return;
+	}
+
+	log.info("Processing " + compUses.size() + " component uses on "
+		+ threads + " threads");
+	ExecutorService executor = Executors.newFixedThreadPool(threads);
+	try {
+	    final List<ComponentPojo> comps = getComponents(executor, dataSource,
+		    compUses);
+
+	    // Component ID -> the indexes of the uses of that component
+	    Map<String, List<Integer>> usesByComp = new LinkedHashMap<String, List<Integer>>();
+	    for (int i = 0; i < compUses.size(); i++) {
+		String compId = comps.get(i).getId();
+		List<Integer> useIndexes = usesByComp.get(compId);
+		if (useIndexes == null) {
+		    useIndexes = new ArrayList<Integer>();
+		    usesByComp.put(compId, useIndexes);
+		}
+		useIndexes.add(i);
+	    }
+
+	    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(
+		    usesByComp.size());
+	    for (final List<Integer> useIndexes : usesByComp.values()) {
+		tasks.add(new Callable<Void>() {
+		    @Override
+		    public Void call() throws Exception {
+			for (int i : useIndexes) {
+			    collectDataComponent(dataSource, app,
+				    compUses.get(i), comps.get(i), writeMode);
+			}
+			return null;
+		    }
+		});
+	    }
+	    invokeAll(executor, tasks);
+	} finally {
+	    executor.shutdownNow();
+	}
+    }
+
+    /**
+     * Look up the component of each use, concurrently.
+     *
+     * @return the components, in the order of the uses
+     */
+    private List<ComponentPojo> getComponents(ExecutorService executor,
+	    final ApplicationData6_6_1Dao dataSource,
+	    List<ComponentUsePojo> compUses) throws Exception {
+	List<Callable<ComponentPojo>> tasks = new ArrayList<Callable<ComponentPojo>>(
+		compUses.size());
+	for (final ComponentUsePojo compUse : compUses) {
+	    tasks.add(new Callable<ComponentPojo>() {
+		@Override
+		public ComponentPojo call() throws Exception {
+		    return dataSource.getComponent(compUse);
+		}
+	    });
+	}
+	return invokeAll(executor, tasks);
+    }
+
+    /**
+     * Run the tasks and return their results, in order. If a task fails, the
+     * rest are cancelled and the error is thrown.
+     */
+    private <T> List<T> invokeAll(ExecutorService executor,
+	    List<Callable<T>> tasks) throws Exception {
+	List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+	try {
+	    for (Callable<T> task : tasks) {
+		futures.add(executor.submit(task));
+	    }
+	    List<T> results = new ArrayList<T>(tasks.size());
+	    for (Future<T> future : futures) {
+		results.add(future.get());
+	    }
+	    return results;
+	} catch (ExecutionException e) {
+	    Throwable cause = e.getCause();
+	    if (cause instanceof Exception) {
+		throw (Exception) cause;
+	    }
+	    throw new Exception("Error processing component uses: "
+		    + cause.getMessage(), cause);
+	} finally {
+	    for (Future<T> future : futures) {
+		future.cancel(true);
+	    }
 	}
     }
 
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.standard.common.cache;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache bounded by the total weight of its entries (by default, each entry
+ * weighs 1, so the bound is the number of entries), with an optional time to
+ * live.
+ *
+ * Reads take no locks: a read looks the entry up in a ConcurrentHashMap and
+ * marks it as recently used. Writes are serialized. When the total weight
+ * exceeds the maximum, entries are evicted using the CLOCK algorithm (an
+ * approximation of least recently used): the entries are kept in insertion
+ * order, and the eldest entry is evicted unless it has been read since it was
+ * last considered, in which case it gets a second chance.
+ *
+ * An entry that on its own weighs more than the maximum is not cached, and no
+ * other entry is evicted for it; an entry already cached under its key is
+ * removed. Expired entries are dropped when they are read or considered for
+ * eviction.
+ *
+ * @param <K>
+ *            the key type
+ * @param <V>
+ *            the value type
+ */
+public class BoundedCache<K, V> implements Cache<K, V> {
+    private static final int MIN_STALE_NODES_TO_PURGE = 16;
+
+    private final long maxWeight;
+    private final long timeToLiveNanos;
+    private final Weigher<? super K, ? super V> weigher;
+
+    private final ConcurrentMap<K, Node<K, V>> map = new ConcurrentHashMap<K, Node<K, V>>();
+
+    // Guarded by this: the clock, in insertion order; it may also hold nodes
+    // that have been replaced or removed, which are skipped (and purged once
+    // there are enough of them)
+    private final ArrayDeque<Node<K, V>> clock = new ArrayDeque<Node<K, V>>();
+    private int staleNodes = 0;
+    private long weight = 0;
+    private long evictionCount = 0;
+
+    /**
+     * Create a cache bounded by number of entries, without a time to live.
+     *
+     * @param maxSize
+     *            the maximum number of entries
+     */
+    public BoundedCache(long maxSize) {
+	this(maxSize, 0, null);
+    }
+
+    /**
+     * Create a cache bounded by total weight, with an optional time to live.
+     *
+     * @param maxWeight
+     *            the maximum total weight of the entries
+     * @param timeToLiveMillis
+     *            how long an entry stays in the cache after it is put, or 0 for
+     *            no limit
+     * @param weigher
+     *            weighs the entries, or null to give each entry a weight of 1
+     */
+    public BoundedCache(long maxWeight, long timeToLiveMillis,
+	    Weigher<? super K, ? super V> weigher) {
+	if (maxWeight < 1) {
+	    throw new IllegalArgumentException("maxWeight must be at least 1");
+	}
+	if (timeToLiveMillis < 0) {
+	    throw new IllegalArgumentException(
+		    "timeToLiveMillis must not be negative");
+	}
+	this.maxWeight = maxWeight;
+	timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+	this.weigher = weigher;
+    }
+
+    @Override
+    public V get(K key) {
+	Node<K, V> node = map.get(key);
+	if (node == null) {
+	    return null;
+	}
+	if (isExpired(node, System.nanoTime())) {
+	    expire(node);
+	    return null;
+	}
+	// Avoid the volatile write (and cache line traffic) when already set
+	if (!node.referenced) {
+	    node.referenced = true;
+	}
+	return node.value;
+    }
+
+    @Override
+    public synchronized void put(K key, V value) {
+	if (key == null || value == null) {
+	    throw new NullPointerException(
+		    "Null keys and values can't be cached");
+	}
+	int nodeWeight = weigher == null ? 1 : weigher.weigh(key, value);
+	if (nodeWeight < 1) {
+	    throw new IllegalArgumentException("Entry weight must be at least 1");
+	}
+	if (nodeWeight > maxWeight) {
+	    remove(key);
+	    return;
+	}
+	long expiresAt = timeToLiveNanos == 0 ? 0 : System.nanoTime()
+		+ timeToLiveNanos;
+	Node<K, V> node = new Node<K, V>(key, value, nodeWeight, expiresAt);
+	Node<K, V> replaced = map.put(key, node);
+	if (replaced != null) {
+	    unlink(replaced);
+	}
+	clock.add(node);
+	weight += nodeWeight;
+	evict();
+    }
+
+    @Override
+    public synchronized void remove(K key) {
+	Node<K, V> removed = map.remove(key);
+	if (removed != null) {
+	    unlink(removed);
+	}
+    }
+
+    @Override
+    public synchronized void clear() {
+	map.clear();
+	clock.clear();
+	staleNodes = 0;
+	weight = 0;
+    }
+
+    @Override
+    public int size() {
+	return map.size();
+    }
+
+    /**
+     * Get a copy of the entries that have not expired, for example to save
+     * them. Reading the entries does not count as using them.
+     *
+     * @return the keys and values
+     */
+    public Map<K, V> getEntries() {
+	long now = System.nanoTime();
+	Map<K, V> entries = new HashMap<K, V>(map.size());
+	for (Node<K, V> node : map.values()) {
+	    if (!isExpired(node, now)) {
+		entries.put(node.key, node.value);
+	    }
+	}
+	return entries;
+    }
+
+    /**
+     * Get the total weight of the cached entries.
+     *
+     * @return the weight
+     */
+    public synchronized long getWeight() {
+	return weight;
+    }
+
+    /**
+     * Get the number of entries evicted to keep the cache within its maximum
+     * weight (entries that expired are not counted).
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictionCount() {
+	return evictionCount;
+    }
+
+    private synchronized void expire(Node<K, V> node) {
+	if (map.remove(node.key, node)) {
+	    unlink(node);
+	}
+    }
+
+    /**
+     * Evict entries until the total weight is within the maximum.
+     */
+    private void evict() {
+	long now = System.nanoTime();
+	while (weight > maxWeight) {
+	    Node<K, V> node = clock.poll();
+	    if (node.removed) {
+		staleNodes--;
+		continue;
+	    }
+	    if (node.referenced && !isExpired(node, now)) {
+		// Second chance
+		node.referenced = false;
+		clock.add(node);
+		continue;
+	    }
+	    map.remove(node.key, node);
+	    node.removed = true;
+	    weight -= node.weight;
+	    if (!isExpired(node, now)) {
+		evictionCount++;
+	    }
+	}
+    }
+
+    /**
+     * Account for a node that is no longer in the map; it stays in the clock
+     * until it comes round or is purged.
+     */
+    private void unlink(Node<K, V> node) {
+	node.removed = true;
+	weight -= node.weight;
+	staleNodes++;
+	if (staleNodes >= MIN_STALE_NODES_TO_PURGE
+		&& staleNodes > clock.size() / 2) {
+	    Iterator<Node<K, V>> iter = clock.iterator();
+	    while (iter.hasNext()) {
+		if (iter.next().removed) {
+		    iter.remove();
+		}
+	    }
+	    staleNodes = 0;
+	}
+    }
+
+    private static boolean isExpired(Node<?, ?> node, long now) {
+	return node.expiresAt != 0 && now - node.expiresAt >= 0;
+    }
+
+    /** A cache entry. */
+    private static class Node<K, V> {
+	private final K key;
+	private final V value;
+	private final int weight;
+	private final long expiresAt;
+
+	/** Set when the entry is read, cleared by the clock hand. */
+	private volatile boolean referenced = false;
+
+	/** Guarded by the cache: no longer in the map. */
+	private boolean removed = false;
+
+	private Node(K key, V value, int weight, long expiresAt) {
+	    this.key = key;
+	    this.value = value;
+	    this.weight = weight;
+	    this.expiresAt = expiresAt;
+	}
+    }
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package com.blackducksoftware.tools.commonframework.standard.common.cache;
+
+/**
+ * A cache of values by key. Implementations must be safe for use by
+ * concurrent threads. Null keys and values are not supported.
+ *
+ * @param <K>
+ *            the key type
+ * @param <V>
+ *            the value type
+ */
+public interface Cache<K, V> {
+
+    /**
+     * Get a cached value.
+     *
+     * @param key
+     * @return the value, or null if it is not cached (or has expired)
+     */
+    public V get(K key);
+
+    /**
+     * Cache a value, replacing any value already cached for the key.
+     *
+     * @param key
+     * @param value
+     */
+    public void put(K key, V value);
+
+    /**
+     * Remove a value from the cache.
+     *
+     * @param key
+     */
+    public void remove(K key);
+
+    /**
+     * Remove all values from the cache.
+     */
+    public void clear();
+
+    /**
+     * Get the number of cached values.
+     *
+     * @return the number of values
+     */
+    public int size();
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package soleng.framework.standard.codecenter.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.blackducksoftware.sdk.codecenter.application.ApplicationApi;
+import com.blackducksoftware.sdk.codecenter.application.data.Application;
+import com.blackducksoftware.sdk.codecenter.application.data.ApplicationIdToken;
+import com.blackducksoftware.sdk.codecenter.application.data.ApplicationPageFilter;
+import com.blackducksoftware.sdk.codecenter.cola.data.ComponentIdToken;
+import com.blackducksoftware.tools.commonframework.standard.codecenter.CodeCenterAPIWrapper;
+import com.blackducksoftware.tools.commonframework.standard.codecenter.CodeCenterServerWrapper;
+import com.blackducksoftware.tools.commonframework.standard.codecenter.dao.CodeCenter6_6_1SdkDao;
+import com.blackducksoftware.tools.commonframework.standard.codecenter.pojo.ApplicationPojo;
+
+/**
+ * Checks that getApplicationIterator() pages through the applications of a
+ * stubbed ApplicationApi without skipping or repeating any, and stops at the
+ * limit set by limitNumberOfApplications().
+ *
+ */
+public class ApplicationPageIteratorTest {
+
+    @Test
+    public void testWholePages() throws Exception {
+	ApplicationSearch search = new ApplicationSearch(10);
+	assertApplications(10, iterate(createDao(search), 5));
+	// The second page is full, so only an empty page ends the iteration
+	assertEquals("[0-5, 5-10, 10-15]", search.getPages().toString());
+    }
+
+    @Test
+    public void testPartialLastPage() throws Exception {
+	ApplicationSearch search = new ApplicationSearch(12);
+	assertApplications(12, iterate(createDao(search), 5));
+	assertEquals("[0-5, 5-10, 10-15]", search.getPages().toString());
+    }
+
+    @Test
+    public void testNoApplications() throws Exception {
+	ApplicationSearch search = new ApplicationSearch(0);
+	assertApplications(0, iterate(createDao(search), 5));
+	assertEquals("[0-5]", search.getPages().toString());
+    }
+
+    @Test
+    public void testLimitWithinPage() throws Exception {
+	ApplicationSearch search = new ApplicationSearch(20);
+	CodeCenter6_6_1SdkDao dao = createDao(search);
+	dao.limitNumberOfApplications(12);
+	assertApplications(12, iterate(dao, 5));
+	assertEquals("[0-5, 5-10, 10-12]", search.getPages().toString());
+    }
+
+    @Test
+    public void testLimitAtPageBoundary() throws Exception {
+	ApplicationSearch search = new ApplicationSearch(20);
+	CodeCenter6_6_1SdkDao dao = createDao(search);
+	dao.limitNumberOfApplications(10);
+	assertApplications(10, iterate(dao, 5));
+	// The limit is reached, so no more pages are requested
+	assertEquals("[0-5, 5-10]", search.getPages().toString());
+    }
+
+    @Test
+    public void testLimitBelowPageSize() throws Exception {
+	ApplicationSearch search = new ApplicationSearch(20);
+	CodeCenter6_6_1SdkDao dao = createDao(search);
+	dao.limitNumberOfApplications(3);
+	assertApplications(3, iterate(dao, 5));
+	assertEquals("[0-3]", search.getPages().toString());
+    }
+
+    private CodeCenter6_6_1SdkDao createDao(ApplicationSearch search)
+	    throws Exception {
+	CodeCenterServerWrapper mockServerWrapper = mock(CodeCenterServerWrapper.class);
+	CodeCenterAPIWrapper mockApiWrapper = mock(CodeCenterAPIWrapper.class);
+	ApplicationApi mockApplicationApi = mock(ApplicationApi.class);
+
+	when(mockServerWrapper.getInternalApiWrapper()).thenReturn(
+		mockApiWrapper);
+	when(mockApiWrapper.getApplicationApi()).thenReturn(mockApplicationApi);
+	when(
+		mockApplicationApi.searchApplications(eq(""),
+			any(ApplicationPageFilter.class))).thenAnswer(search);
+
+	return new CodeCenter6_6_1SdkDao(mockServerWrapper);
+    }
+
+    private List<ApplicationPojo> iterate(CodeCenter6_6_1SdkDao dao,
+	    int pageSize) {
+	List<ApplicationPojo> appPojos = new ArrayList<ApplicationPojo>();
+	Iterator<ApplicationPojo> iterator = dao.getApplicationIterator(pageSize);
+	while (iterator.hasNext()) {
+	    appPojos.add(iterator.next());
+	}
+	assertFalse(iterator.hasNext());
+	return appPojos;
+    }
+
+    private void assertApplications(int expectedNumApps,
+	    List<ApplicationPojo> appPojos) {
+	assertEquals(expectedNumApps, appPojos.size());
+	for (int i = 0; i < expectedNumApps; i++) {
+	    assertEquals(String.valueOf(i), appPojos.get(i).getId());
+	    assertEquals("app" + i, appPojos.get(i).getName());
+	}
+    }
+
+    /**
+     * Answers searchApplications() with the rows of the page filter, taking
+     * the last row index to be exclusive, and records the pages requested.
+     */
+    private static class ApplicationSearch implements
+	    Answer<List<Application>> {
+	private final int numApps;
+	private final List<String> pages = Collections
+		.synchronizedList(new ArrayList<String>());
+
+	private ApplicationSearch(int numApps) {
+	    this.numApps = numApps;
+	}
+
+	@Override
+	public List<Application> answer(InvocationOnMock invocation) {
+	    ApplicationPageFilter filter = (ApplicationPageFilter) invocation
+		    .getArguments()[1];
+	    int firstRowIndex = filter.getFirstRowIndex();
+	    int lastRowIndex = filter.getLastRowIndex();
+	    pages.add(firstRowIndex + "-" + lastRowIndex);
+
+	    List<Application> applications = new ArrayList<Application>();
+	    for (int i = firstRowIndex; i < Math.min(lastRowIndex, numApps); i++) {
+		applications.add(createApplication(i));
+	    }
+	    return applications;
+	}
+
+	private List<String> getPages() {
+	    return pages;
+	}
+
+	private Application createApplication(int i) {
+	    ApplicationIdToken id = new ApplicationIdToken();
+	    id.setId(String.valueOf(i));
+	    ComponentIdToken componentId = new ComponentIdToken();
+	    componentId.setId("component" + i);
+
+	    Application app = new Application();
+	    app.setId(id);
+	    app.setName("app" + i);
+	    app.setVersion("1.0");
+	    app.setApplicationComponentId(componentId);
+	    return app;
+	}
+    }
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package soleng.framework.standard.codecenter.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.junit.Test;
+
+import com.blackducksoftware.sdk.codecenter.vulnerability.data.VulnerabilityIdToken;
+import com.blackducksoftware.sdk.codecenter.vulnerability.data.VulnerabilitySummary;
+import com.blackducksoftware.tools.commonframework.standard.codecenter.dao.KbReleaseVulnerabilityCache;
+
+/**
+ * Makes sure the vulnerabilities saved by a KbReleaseVulnerabilityCache are
+ * loaded back by the next one.
+ *
+ */
+public class KbReleaseVulnerabilityCacheTest {
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+	File file = File.createTempFile("kbReleaseVulnerabilities", ".xml");
+	try {
+	    // An existing file must hold a saved cache; start with none
+	    file.delete();
+
+	    XMLGregorianCalendar published = DatatypeFactory.newInstance()
+		    .newXMLGregorianCalendar(
+			    new GregorianCalendar(2014, 9, 7, 12, 30, 0));
+	    List<VulnerabilitySummary> vulnerabilities = new ArrayList<VulnerabilitySummary>();
+	    vulnerabilities.add(createVulnerability("CVE-2014-0160",
+		    "Heartbleed <TLS & DTLS>", "HIGH", published));
+	    vulnerabilities.add(createVulnerability("CVE-2014-6271",
+		    "Shellshock", "MEDIUM", published));
+
+	    KbReleaseVulnerabilityCache cache = new KbReleaseVulnerabilityCache(
+		    1000, 0, file);
+	    cache.put("release1", vulnerabilities);
+	    cache.put("release2", new ArrayList<VulnerabilitySummary>());
+	    cache.save();
+
+	    KbReleaseVulnerabilityCache loadedCache = new KbReleaseVulnerabilityCache(
+		    1000, 0, file);
+	    assertEquals(2, loadedCache.size());
+	    assertEquals(0, loadedCache.get("release2").size());
+	    assertNull(loadedCache.get("release3"));
+
+	    List<VulnerabilitySummary> loadedVulnerabilities = loadedCache
+		    .get("release1");
+	    assertEquals(vulnerabilities.size(), loadedVulnerabilities.size());
+	    for (int i = 0; i < vulnerabilities.size(); i++) {
+		VulnerabilitySummary expected = vulnerabilities.get(i);
+		VulnerabilitySummary loaded = loadedVulnerabilities.get(i);
+		assertEquals(expected.getId().getId(), loaded.getId().getId());
+		assertEquals(expected.getName(), loaded.getName());
+		assertEquals(expected.getSeverity(), loaded.getSeverity());
+		assertEquals(expected.getPublished().toGregorianCalendar()
+			.getTime(), loaded.getPublished().toGregorianCalendar()
+			.getTime());
+	    }
+	} finally {
+	    file.delete();
+	}
+    }
+
+    private static VulnerabilitySummary createVulnerability(String id,
+	    String name, String severity, XMLGregorianCalendar published) {
+	VulnerabilityIdToken idToken = new VulnerabilityIdToken();
+	idToken.setId(id);
+	VulnerabilitySummary vulnerability = new VulnerabilitySummary();
+	vulnerability.setId(idToken);
+	vulnerability.setName(name);
+	vulnerability.setSeverity(severity);
+	vulnerability.setPublished(published);
+	return vulnerability;
+    }
+}
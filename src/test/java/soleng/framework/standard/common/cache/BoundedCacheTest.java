@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package soleng.framework.standard.common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.blackducksoftware.tools.commonframework.standard.common.cache.BoundedCache;
+import com.blackducksoftware.tools.commonframework.standard.common.cache.Weigher;
+
+/**
+ * Tests the eviction, expiry and weight accounting of BoundedCache.
+ *
+ */
+public class BoundedCacheTest {
+
+    /** Weighs an entry by the length of its value. */
+    private static final Weigher<String, String> VALUE_LENGTH = new Weigher<String, String>() {
+	@Override
+	public int weigh(String key, String value) {
+	    return value.length();
+	}
+    };
+
+    @Test
+    public void testEvictsEldestEntry() {
+	BoundedCache<String, String> cache = new BoundedCache<String, String>(3);
+	cache.put("a", "1");
+	cache.put("b", "2");
+	cache.put("c", "3");
+	cache.put("d", "4");
+
+	assertEquals(3, cache.size());
+	assertNull(cache.get("a"));
+	assertEquals("2", cache.get("b"));
+	assertEquals("3", cache.get("c"));
+	assertEquals("4", cache.get("d"));
+	assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testReadEntryGetsSecondChance() {
+	BoundedCache<String, String> cache = new BoundedCache<String, String>(3);
+	cache.put("a", "1");
+	cache.put("b", "2");
+	cache.put("c", "3");
+	cache.get("a");
+	cache.put("d", "4");
+
+	assertNull(cache.get("b"));
+	assertEquals(1, cache.getEvictionCount());
+
+	// a went to the back of the clock; unless it is read again, it is
+	// evicted when its turn comes round
+	cache.put("e", "5");
+	cache.put("f", "6");
+	assertEquals(3, cache.getEvictionCount());
+	cache.put("g", "7");
+	assertNull(cache.get("a"));
+	assertEquals(4, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testExpiredEntriesAreDropped() throws Exception {
+	BoundedCache<String, String> cache = new BoundedCache<String, String>(
+		3, 1, null);
+	cache.put("a", "1");
+	Thread.sleep(20);
+
+	assertNull(cache.get("a"));
+	assertEquals(0, cache.size());
+	assertEquals(0, cache.getWeight());
+	assertEquals(0, cache.getEntries().size());
+
+	// Expired entries are not counted as evictions
+	cache.put("b", "2");
+	cache.put("c", "3");
+	cache.put("d", "4");
+	Thread.sleep(20);
+	cache.put("e", "5");
+	assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testReplacedEntry() {
+	BoundedCache<String, String> cache = new BoundedCache<String, String>(2);
+	cache.put("a", "1");
+	cache.put("a", "2");
+
+	assertEquals(1, cache.size());
+	assertEquals(1, cache.getWeight());
+	assertEquals("2", cache.get("a"));
+
+	// The replaced entry takes no room: a is only evicted by the third key
+	cache.put("b", "3");
+	assertEquals(2, cache.size());
+	assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testWeightAccounting() {
+	BoundedCache<String, String> cache = new BoundedCache<String, String>(
+		10, 0, VALUE_LENGTH);
+	cache.put("a", "1234");
+	cache.put("b", "1234");
+	assertEquals(8, cache.getWeight());
+
+	cache.put("c", "1234");
+	assertEquals(8, cache.getWeight());
+	assertNull(cache.get("a"));
+
+	cache.put("b", "12");
+	assertEquals(6, cache.getWeight());
+
+	cache.remove("c");
+	assertEquals(2, cache.getWeight());
+	assertEquals(1, cache.size());
+
+	cache.clear();
+	assertEquals(0, cache.getWeight());
+	assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testOverweightEntryIsRejected() {
+	BoundedCache<String, String> cache = new BoundedCache<String, String>(
+		10, 0, VALUE_LENGTH);
+	cache.put("a", "1234");
+	cache.put("b", "1234");
+
+	// Too heavy to cache: nothing else is evicted for it
+	cache.put("c", "12345678901");
+	assertNull(cache.get("c"));
+	assertEquals("1234", cache.get("a"));
+	assertEquals("1234", cache.get("b"));
+	assertEquals(8, cache.getWeight());
+	assertEquals(0, cache.getEvictionCount());
+
+	// The value it replaces is not kept either
+	cache.put("a", "12345678901");
+	assertNull(cache.get("a"));
+	assertEquals(4, cache.getWeight());
+	assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package soleng.framework.standard.protex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.blackducksoftware.tools.commonframework.connector.protex.ProtexAPIWrapper;
+import com.blackducksoftware.tools.commonframework.connector.protex.ProtexProxyPool;
+import com.blackducksoftware.tools.commonframework.core.config.ConfigurationManager;
+import com.blackducksoftware.tools.commonframework.core.config.server.ServerBean;
+
+/**
+ * Checks that ProtexProxyPool hands wrappers out to one caller at a time,
+ * reuses them, validates them when asked to, and creates no more than the
+ * maximum per user. The wrappers are mocks.
+ *
+ */
+public class ProtexProxyPoolTest {
+    private static final String SERVER = "http://protex.example.com";
+
+    private ConfigurationManager mockConfig;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+	mockConfig = mock(ConfigurationManager.class);
+	executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+	executor.shutdownNow();
+    }
+
+    @Test
+    public void testLeaseAndReturn() throws Exception {
+	MockWrapperPool pool = new MockWrapperPool(2);
+	ServerBean bean = createServerBean("user1", "password1");
+
+	ProtexAPIWrapper wrapper = pool.acquire(bean, mockConfig, false);
+	assertEquals(1, pool.getActiveCount());
+	pool.release(wrapper);
+	assertEquals(0, pool.getActiveCount());
+
+	// The idle wrapper is reused
+	assertSame(wrapper, pool.acquire(bean, mockConfig, false));
+	assertEquals(1, pool.created.size());
+
+	// Another user gets a wrapper of their own
+	ProtexAPIWrapper otherWrapper = pool.acquire(
+		createServerBean("user2", "password2"), mockConfig, false);
+	assertNotSame(wrapper, otherWrapper);
+	assertEquals(2, pool.created.size());
+	assertEquals(2, pool.getActiveCount());
+    }
+
+    @Test
+    public void testReleaseForeignWrapper() throws Exception {
+	MockWrapperPool pool = new MockWrapperPool(1);
+	try {
+	    pool.release(mock(ProtexAPIWrapper.class));
+	    fail("A wrapper from elsewhere was accepted");
+	} catch (IllegalArgumentException e) {
+	    // expected
+	}
+
+	ProtexAPIWrapper wrapper = pool.acquire(
+		createServerBean("user1", "password1"), mockConfig, false);
+	pool.release(wrapper);
+	try {
+	    pool.release(wrapper);
+	    fail("A wrapper was released twice");
+	} catch (IllegalArgumentException e) {
+	    // expected
+	}
+    }
+
+    @Test
+    public void testValidation() throws Exception {
+	MockWrapperPool pool = new MockWrapperPool(1);
+	ServerBean bean = createServerBean("user1", "password1");
+
+	ProtexAPIWrapper wrapper = pool.acquire(bean, mockConfig, false);
+	pool.release(wrapper);
+	// A wrapper is validated when it is created, or else when it is
+	// reused by a caller that asks for validation
+	verify(wrapper, never()).ensureValidated();
+	assertSame(wrapper, pool.acquire(bean, mockConfig, true));
+	verify(wrapper, times(1)).ensureValidated();
+	pool.release(wrapper);
+
+	doThrow(new Exception("Invalid credentials")).when(wrapper)
+		.ensureValidated();
+	try {
+	    pool.acquire(bean, mockConfig, true);
+	    fail("The credentials were not validated");
+	} catch (Exception e) {
+	    assertEquals("Invalid credentials", e.getMessage());
+	}
+
+	// The wrapper and its permit went back to the pool
+	assertEquals(0, pool.getActiveCount());
+	assertSame(wrapper, pool.acquire(bean, mockConfig, false));
+	assertEquals(1, pool.created.size());
+    }
+
+    @Test
+    public void testCreationFailure() throws Exception {
+	MockWrapperPool pool = new MockWrapperPool(1);
+	ServerBean bean = createServerBean("user1", "password1");
+	pool.failCreation = true;
+	try {
+	    pool.acquire(bean, mockConfig, true);
+	    fail("The wrapper was created");
+	} catch (Exception e) {
+	    assertEquals("Unable to connect", e.getMessage());
+	}
+
+	// The permit was released
+	pool.failCreation = false;
+	pool.acquire(bean, mockConfig, true);
+	assertEquals(1, pool.getActiveCount());
+    }
+
+    @Test
+    public void testMaxWrappersPerUser() throws Exception {
+	final MockWrapperPool pool = new MockWrapperPool(2);
+	final ServerBean bean = createServerBean("user1", "password1");
+
+	ProtexAPIWrapper wrapper1 = pool.acquire(bean, mockConfig, false);
+	pool.acquire(bean, mockConfig, false);
+	Future<ProtexAPIWrapper> waiting = executor
+		.submit(new Callable<ProtexAPIWrapper>() {
+		    @Override
+		    public ProtexAPIWrapper call() throws Exception {
+			return pool.acquire(bean, mockConfig, false);
+		    }
+		});
+	try {
+	    waiting.get(200, TimeUnit.MILLISECONDS);
+	    fail("A third wrapper was handed out");
+	} catch (TimeoutException e) {
+	    // expected
+	}
+	assertFalse(waiting.isDone());
+
+	pool.release(wrapper1);
+	assertSame(wrapper1, waiting.get(5, TimeUnit.SECONDS));
+	assertEquals(2, pool.created.size());
+	assertEquals(2, pool.getActiveCount());
+    }
+
+    private ServerBean createServerBean(String user, String password) {
+	ServerBean bean = mock(ServerBean.class);
+	when(bean.getServerName()).thenReturn(SERVER);
+	when(bean.getUserName()).thenReturn(user);
+	when(bean.getPassword()).thenReturn(password);
+	return bean;
+    }
+
+    /**
+     * A pool of mock wrappers, recording the ones it creates.
+     */
+    private static class MockWrapperPool extends ProtexProxyPool {
+	private final List<ProtexAPIWrapper> created = new ArrayList<ProtexAPIWrapper>();
+	private volatile boolean failCreation = false;
+
+	private MockWrapperPool(int maxWrappersPerUser) {
+	    super(maxWrappersPerUser);
+	}
+
+	@Override
+	protected ProtexAPIWrapper createWrapper(ServerBean bean,
+		ConfigurationManager configManager, boolean validate)
+		throws Exception {
+	    if (failCreation) {
+		throw new Exception("Unable to connect");
+	    }
+	    ProtexAPIWrapper wrapper = mock(ProtexAPIWrapper.class);
+	    synchronized (created) {
+		created.add(wrapper);
+	    }
+	    return wrapper;
+	}
+    }
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package soleng.framework.standard.protex.identification;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.blackducksoftware.sdk.protex.common.BomRefreshMode;
+import com.blackducksoftware.sdk.protex.project.bom.BomApi;
+import com.blackducksoftware.sdk.protex.project.codetree.discovery.CodeMatchDiscovery;
+import com.blackducksoftware.sdk.protex.project.codetree.identification.CodeMatchIdentificationRequest;
+import com.blackducksoftware.sdk.protex.project.codetree.identification.IdentificationApi;
+import com.blackducksoftware.tools.commonframework.connector.protex.ProtexServerWrapper;
+import com.blackducksoftware.tools.commonframework.connector.protex.identification.CodeMatchIdIdentifier;
+import com.blackducksoftware.tools.commonframework.connector.protex.identification.IdentificationPipeline;
+import com.blackducksoftware.tools.commonframework.connector.protex.identification.ProtexIdUtils;
+import com.blackducksoftware.tools.commonframework.standard.protex.ProtexProjectPojo;
+
+/**
+ * Checks the BOM refreshes an IdentificationPipeline makes, against mocked
+ * Protex APIs, and that it leaves the identifier's BOM refresh mode as it
+ * found it.
+ *
+ */
+public class IdentificationPipelineTest {
+    private static final String PROJECT_NAME = "pipelineTest";
+    private static final String PROJECT_ID = "pipelineTest_id";
+
+    private ProtexServerWrapper<ProtexProjectPojo> mockServerWrapper;
+    private BomApi mockBomApi;
+    private IdentificationApi mockIdentificationApi;
+    private CodeMatchDiscovery mockDiscovery;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() throws Exception {
+	mockServerWrapper = mock(ProtexServerWrapper.class, RETURNS_DEEP_STUBS);
+	mockBomApi = mock(BomApi.class);
+	mockIdentificationApi = mock(IdentificationApi.class);
+	mockDiscovery = mock(CodeMatchDiscovery.class, RETURNS_DEEP_STUBS);
+
+	when(
+		mockServerWrapper.getInternalApiWrapper().getProjectApi()
+			.getProjectByName(PROJECT_NAME).getProjectId())
+		.thenReturn(PROJECT_ID);
+	when(mockServerWrapper.getInternalApiWrapper().getBomApi())
+		.thenReturn(mockBomApi);
+	when(mockServerWrapper.getInternalApiWrapper().getIdentificationApi())
+		.thenReturn(mockIdentificationApi);
+    }
+
+    /**
+     * With doRefresh false, the identifier would have refreshed the BOM after
+     * each identification; the pipeline must still refresh it once at the
+     * end.
+     */
+    @Test
+    public void testSingleRefreshWithoutDoRefresh() throws Exception {
+	CodeMatchIdIdentifier identifier = new CodeMatchIdIdentifier("test");
+	ProtexIdUtils protexUtils = createProtexIdUtils(identifier, false);
+
+	IdentificationPipeline pipeline = new IdentificationPipeline(
+		protexUtils, 3, 0);
+	assertEquals(BomRefreshMode.SKIP, identifier.getBomRefreshMode());
+	submit(pipeline, 10);
+	assertEquals(10, pipeline.finish());
+
+	verify(mockIdentificationApi, times(10)).addCodeMatchIdentification(
+		eq(PROJECT_ID), anyString(),
+		any(CodeMatchIdentificationRequest.class),
+		eq(BomRefreshMode.SKIP));
+	verify(mockBomApi, times(1)).refreshBom(PROJECT_ID, true, false);
+	assertEquals(BomRefreshMode.SYNCHRONOUS, identifier.getBomRefreshMode());
+    }
+
+    @Test
+    public void testRefreshInterval() throws Exception {
+	CodeMatchIdIdentifier identifier = new CodeMatchIdIdentifier("test");
+	ProtexIdUtils protexUtils = createProtexIdUtils(identifier, true);
+
+	// Refreshes before the 5th and 9th identifications, and at the end
+	IdentificationPipeline pipeline = new IdentificationPipeline(
+		protexUtils, 2, 4);
+	submit(pipeline, 10);
+	pipeline.finish();
+
+	verify(mockBomApi, times(3)).refreshBom(PROJECT_ID, true, false);
+    }
+
+    @Test
+    public void testNoRefreshAfterCheckpoint() throws Exception {
+	CodeMatchIdIdentifier identifier = new CodeMatchIdIdentifier("test");
+	ProtexIdUtils protexUtils = createProtexIdUtils(identifier, true);
+
+	IdentificationPipeline pipeline = new IdentificationPipeline(
+		protexUtils, 2, 0);
+	submit(pipeline, 5);
+	pipeline.checkpoint();
+	pipeline.finish();
+
+	verify(mockBomApi, times(1)).refreshBom(PROJECT_ID, true, false);
+    }
+
+    @Test
+    public void testCloseRestoresBomRefreshMode() throws Exception {
+	CodeMatchIdIdentifier identifier = new CodeMatchIdIdentifier("test");
+	identifier.setBomRefreshMode(BomRefreshMode.ASYNCHRONOUS);
+	ProtexIdUtils protexUtils = createProtexIdUtils(identifier, true);
+
+	IdentificationPipeline pipeline = new IdentificationPipeline(
+		protexUtils, 2, 0);
+	assertEquals(BomRefreshMode.SKIP, identifier.getBomRefreshMode());
+	pipeline.close();
+
+	assertEquals(BomRefreshMode.ASYNCHRONOUS,
+		identifier.getBomRefreshMode());
+	verify(mockBomApi, never()).refreshBom(anyString(),
+		any(Boolean.class), any(Boolean.class));
+    }
+
+    /**
+     * An identifier that was already set to skip refreshes is left to the
+     * caller's doRefresh setting.
+     */
+    @Test
+    public void testIdentifierAlreadySkipping() throws Exception {
+	CodeMatchIdIdentifier identifier = new CodeMatchIdIdentifier("test");
+	identifier.setBomRefreshMode(BomRefreshMode.SKIP);
+	ProtexIdUtils protexUtils = createProtexIdUtils(identifier, false);
+
+	IdentificationPipeline pipeline = new IdentificationPipeline(
+		protexUtils, 2, 0);
+	submit(pipeline, 3);
+	pipeline.finish();
+
+	verify(mockBomApi, never()).refreshBom(anyString(),
+		any(Boolean.class), any(Boolean.class));
+	assertEquals(BomRefreshMode.SKIP, identifier.getBomRefreshMode());
+    }
+
+    private ProtexIdUtils createProtexIdUtils(
+	    CodeMatchIdIdentifier identifier, boolean doRefresh)
+	    throws Exception {
+	ProtexIdUtils protexUtils = new ProtexIdUtils(mockServerWrapper,
+		identifier, PROJECT_NAME, doRefresh);
+	identifier.setProtexUtils(protexUtils);
+	return protexUtils;
+    }
+
+    private void submit(IdentificationPipeline pipeline, int count)
+	    throws Exception {
+	for (int i = 0; i < count; i++) {
+	    pipeline.submit("/src/file" + i + ".c", mockDiscovery);
+	}
+    }
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package soleng.framework.standard.protex.report;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.blackducksoftware.tools.commonframework.connector.protex.report.ColumnarReportSection;
+import com.blackducksoftware.tools.commonframework.connector.protex.report.ReportRowHandler;
+import com.blackducksoftware.tools.commonframework.connector.protex.report.StreamingAdHocParser;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.AdHocElement;
+
+/**
+ * Makes sure a ColumnarReportSection gives back the values it was given,
+ * whichever way its columns end up stored, and that it takes much less memory
+ * than a HocElement per row.
+ *
+ */
+public class ColumnarReportSectionTest {
+    private static final String SAVED_REPORT_DIR = "src/test/resources/savedreports/protex6";
+
+    private static final String[] LICENSES = { "Apache License 2.0",
+	    "GPL 2.0", "MIT License", "BSD 3-clause" };
+
+    @Test
+    public void testValues() throws Exception {
+	List<AdHocElement> rows = new ArrayList<AdHocElement>();
+	for (int i = 0; i < 3000; i++) {
+	    AdHocElement row = new AdHocElement();
+	    row.setPair("counter", String.valueOf(i));
+	    row.setPair("License", LICENSES[i % LICENSES.length]);
+	    row.setPair("File", "src/main/java/File" + i + ".java");
+	    row.setPair("Number", String.valueOf(i - 1500));
+	    // Ints, with gaps, until values that can't be stored as ints turn
+	    // up
+	    if (i < 1000) {
+		if (i % 2 == 0) {
+		    row.setPair("Version", String.valueOf(i * 7));
+		}
+	    } else if (i < 2000) {
+		if (i % 3 == 0) {
+		    row.setPair("Version", String.valueOf(Integer.MIN_VALUE));
+		} else if (i % 3 == 1) {
+		    row.setPair("Version", null);
+		}
+	    } else {
+		row.setPair("Version", (i % 2 == 0) ? "007" : "-0");
+	    }
+	    rows.add(row);
+	}
+
+	ColumnarReportSection<AdHocElement> section = new ColumnarReportSection<AdHocElement>();
+	for (AdHocElement row : rows) {
+	    section.handleRow(row);
+	}
+
+	assertEquals(rows.size(), section.getRowCount());
+	assertEquals(Arrays.asList("counter", "License", "File", "Number",
+		"Version"), new ArrayList<String>(section.getColumnKeys()));
+	for (ColumnarReportSection<AdHocElement>.Row row : section) {
+	    AdHocElement expectedRow = rows.get(row.getRowIndex());
+	    assertEquals(expectedRow.getPairKeys(), row.getPairKeys());
+	    for (String key : section.getColumnKeys()) {
+		assertEquals(expectedRow.getValue(key), row.getValue(key));
+	    }
+	}
+	assertEquals(rows.get(2).toString(), section.getRow(2)
+		.toHocElement(AdHocElement.class).toString());
+    }
+
+    @Test
+    public void testRowValues() throws Exception {
+	ColumnarReportSection<AdHocElement> section = new ColumnarReportSection<AdHocElement>();
+	String[] keys = { "counter", "License", "License", "Unused" };
+	String[] values = { "0", "GPL 2.0", "MIT License", "x" };
+	// Only the first size keys and values are part of the row, and the
+	// last value for a key wins
+	section.handleRow(keys, values, 3);
+	values[0] = "1";
+	values[2] = null;
+	section.handleRow(keys, values, 3);
+
+	assertEquals(2, section.getRowCount());
+	assertEquals(new LinkedHashSet<String>(Arrays.asList("counter",
+		"License")), section.getColumnKeys());
+	assertEquals("0", section.getValue(0, "counter"));
+	assertEquals("MIT License", section.getValue(0, "License"));
+	assertEquals("1", section.getValue(1, "counter"));
+	assertNull(section.getValue(1, "License"));
+	assertTrue(section.getRow(1).getPairKeys().contains("License"));
+	assertNull(section.getValue(1, "Unused"));
+    }
+
+    /**
+     * The streaming parser passes the rows' values straight to the section,
+     * which must end up with the same rows as a HocElement per row.
+     */
+    @Test
+    public void testParsedSection() throws Exception {
+	final List<AdHocElement> expectedRows = new ArrayList<AdHocElement>();
+	LineNumberReader lnr = openReport("11_identifiedFiles.html");
+	try {
+	    new StreamingAdHocParser<AdHocElement>().parseRows(lnr, false,
+		    AdHocElement.class, 0,
+		    new ReportRowHandler<AdHocElement>() {
+			@Override
+			public void handleRow(AdHocElement row) {
+			    expectedRows.add(row);
+			}
+		    });
+	} finally {
+	    lnr.close();
+	}
+
+	ColumnarReportSection<AdHocElement> section = new ColumnarReportSection<AdHocElement>();
+	lnr = openReport("11_identifiedFiles.html");
+	try {
+	    int rowCount = new StreamingAdHocParser<AdHocElement>().parseRows(
+		    lnr, false, AdHocElement.class, 0, section);
+	    assertEquals(expectedRows.size(), rowCount);
+	} finally {
+	    lnr.close();
+	}
+
+	assertEquals(expectedRows.size(), section.getRowCount());
+	for (ColumnarReportSection<AdHocElement>.Row row : section) {
+	    AdHocElement expectedRow = expectedRows.get(row.getRowIndex());
+	    assertEquals(expectedRow.getPairKeys(), row.getPairKeys());
+	    for (String key : expectedRow.getPairKeys()) {
+		assertEquals(expectedRow.getValue(key), row.getValue(key));
+	    }
+	}
+    }
+
+    /**
+     * Measure the heap taken by the rows of a typical section, held as
+     * HocElements and as a ColumnarReportSection. Each row has a unique
+     * counter and file path, and three low cardinality values.
+     */
+    @Test
+    public void testMemoryUse() throws Exception {
+	int numRows = 50000;
+
+	long before = getUsedMemory();
+	List<AdHocElement> rows = new ArrayList<AdHocElement>(numRows);
+	for (int i = 0; i < numRows; i++) {
+	    rows.add(createRow(i));
+	}
+	long hocElementBytes = getUsedMemory() - before;
+	assertEquals(numRows, rows.size());
+	rows = null;
+
+	before = getUsedMemory();
+	ColumnarReportSection<AdHocElement> section = new ColumnarReportSection<AdHocElement>();
+	for (int i = 0; i < numRows; i++) {
+	    section.handleRow(createRow(i));
+	}
+	long columnarBytes = getUsedMemory() - before;
+	assertEquals(numRows, section.getRowCount());
+
+	System.out.println("Heap for " + numRows + " rows: HocElements "
+		+ hocElementBytes + " bytes, columnar " + columnarBytes
+		+ " bytes");
+	assertTrue("Columnar section takes " + columnarBytes
+		+ " bytes, HocElements " + hocElementBytes,
+		columnarBytes * 3 < hocElementBytes);
+    }
+
+    private static AdHocElement createRow(int i) {
+	AdHocElement row = new AdHocElement();
+	row.setPair("counter", String.valueOf(i));
+	row.setPair("Component", "Component " + (i % 50));
+	row.setPair("Version", "1." + (i % 5));
+	row.setPair("License", LICENSES[i % LICENSES.length]);
+	row.setPair("File", "src/main/java/com/example/File" + i + ".java");
+	return row;
+    }
+
+    private static long getUsedMemory() throws InterruptedException {
+	Runtime runtime = Runtime.getRuntime();
+	for (int i = 0; i < 4; i++) {
+	    System.gc();
+	    Thread.sleep(50);
+	}
+	return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private LineNumberReader openReport(String htmlFilename) throws Exception {
+	LineNumberReader lnr = new LineNumberReader(new InputStreamReader(
+		new FileInputStream(SAVED_REPORT_DIR + "/" + htmlFilename),
+		"UTF-8"));
+	lnr.readLine(); // ReportUtils skips the first line too
+	return lnr;
+    }
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package soleng.framework.standard.protex.report;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import com.blackducksoftware.tools.commonframework.connector.protex.report.MappedFileReader;
+
+/**
+ * Makes sure MappedFileReader decodes characters that are split across the
+ * windows it maps.
+ *
+ */
+public class MappedFileReaderTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Two, three and four byte characters. */
+    private static final String[] MULTI_BYTE_CHARS = { "\u00e9", "\u20ac",
+	    "\ud834\udd1e" };
+
+    @Test
+    public void testCharacterSplitAcrossWindows() throws Exception {
+	int windowSize = (int) MappedFileReader.MIN_MAP_WINDOW_SIZE;
+	for (String multiByteChar : MULTI_BYTE_CHARS) {
+	    // Start the character at each byte around the end of the window
+	    for (int prefixLength = windowSize - 4; prefixLength <= windowSize; prefixLength++) {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < prefixLength; i++) {
+		    content.append('a');
+		}
+		content.append(multiByteChar).append("b\nend");
+		check(content.toString(), windowSize);
+	    }
+	}
+    }
+
+    @Test
+    public void testManyWindows() throws Exception {
+	StringBuilder content = new StringBuilder();
+	for (int i = 0; i < 100; i++) {
+	    for (String multiByteChar : MULTI_BYTE_CHARS) {
+		content.append(multiByteChar);
+	    }
+	    content.append(i % 10 == 0 ? "\n" : "x");
+	}
+	check(content.toString(), 16);
+	check(content.toString(), 17);
+	check(content.toString(), 19);
+    }
+
+    private void check(String content, long windowSize) throws Exception {
+	File file = File.createTempFile("mappedFileReaderTest", ".txt");
+	try {
+	    OutputStream os = new FileOutputStream(file);
+	    try {
+		os.write(content.getBytes(UTF8));
+	    } finally {
+		os.close();
+	    }
+
+	    // Read a char at a time, so surrogate pairs are split too, and
+	    // a buffer at a time
+	    assertEquals(content, read(file, windowSize, 1));
+	    assertEquals(content, read(file, windowSize, 1024));
+	} finally {
+	    if (!file.delete()) {
+		// Still mapped, until the garbage collector unmaps it
+		file.deleteOnExit();
+	    }
+	}
+    }
+
+    private String read(File file, long windowSize, int bufferSize)
+	    throws Exception {
+	StringBuilder chars = new StringBuilder();
+	MappedFileReader reader = new MappedFileReader(file, UTF8, windowSize);
+	try {
+	    char[] buffer = new char[bufferSize];
+	    int len;
+	    while ((len = reader.read(buffer, 0, bufferSize)) != -1) {
+		chars.append(buffer, 0, len);
+	    }
+	} finally {
+	    reader.close();
+	}
+	return chars.toString();
+    }
+}
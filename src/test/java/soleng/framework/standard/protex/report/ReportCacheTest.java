@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package soleng.framework.standard.protex.report;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.activation.DataHandler;
+import javax.activation.FileDataSource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.blackducksoftware.sdk.protex.report.ReportSectionType;
+import com.blackducksoftware.tools.commonframework.connector.protex.report.ReportCache;
+
+/**
+ * Checks that a ReportCache evicts the least recently used reports, picks up
+ * the reports of an earlier run, and leaves alone the other files in its
+ * directory.
+ *
+ */
+public class ReportCacheTest {
+    private static final String PROJECT_ID = "c_test#project";
+    private static final int REPORT_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testEviction() throws Exception {
+	File cacheDir = tempFolder.newFolder("cache");
+	ReportCache cache = new ReportCache(cacheDir, 2 * REPORT_SIZE);
+	Date analyzed = new Date(1000L);
+
+	putReport(cache, ReportSectionType.SUMMARY, analyzed);
+	putReport(cache, ReportSectionType.BILL_OF_MATERIALS, analyzed);
+	// Use the summary, so the bill of materials is evicted next
+	assertReport(cache, ReportSectionType.SUMMARY, analyzed);
+	putReport(cache, ReportSectionType.FILE_INVENTORY, analyzed);
+
+	assertEquals(2, cache.getReportCount());
+	assertEquals(2 * REPORT_SIZE, cache.getSize());
+	assertReport(cache, ReportSectionType.SUMMARY, analyzed);
+	assertNull(cache.open(PROJECT_ID, ReportSectionType.BILL_OF_MATERIALS,
+		analyzed));
+	assertReport(cache, ReportSectionType.FILE_INVENTORY, analyzed);
+	assertEquals(2, cacheDir.list().length);
+    }
+
+    @Test
+    public void testReanalyzedProject() throws Exception {
+	File cacheDir = tempFolder.newFolder("cache");
+	ReportCache cache = new ReportCache(cacheDir, 10 * REPORT_SIZE);
+
+	putReport(cache, ReportSectionType.SUMMARY, new Date(1000L));
+	putReport(cache, ReportSectionType.SUMMARY, new Date(2000L));
+
+	assertEquals(1, cache.getReportCount());
+	assertNull(cache.open(PROJECT_ID, ReportSectionType.SUMMARY, new Date(
+		1000L)));
+	assertReport(cache, ReportSectionType.SUMMARY, new Date(2000L));
+    }
+
+    @Test
+    public void testReload() throws Exception {
+	File cacheDir = tempFolder.newFolder("cache");
+	Date analyzed = new Date(1000L);
+	ReportCache cache = new ReportCache(cacheDir, 10 * REPORT_SIZE);
+	putReport(cache, ReportSectionType.SUMMARY, analyzed);
+	putReport(cache, ReportSectionType.BILL_OF_MATERIALS, analyzed);
+
+	// Another run, with a smaller cache; the least recently used report
+	// goes
+	File summaryFile = findFile(cacheDir, ReportSectionType.SUMMARY);
+	summaryFile.setLastModified(summaryFile.lastModified() - 60000L);
+	ReportCache reloaded = new ReportCache(cacheDir, REPORT_SIZE);
+
+	assertEquals(1, reloaded.getReportCount());
+	assertEquals(REPORT_SIZE, reloaded.getSize());
+	assertNull(reloaded.open(PROJECT_ID, ReportSectionType.SUMMARY,
+		analyzed));
+	assertReport(reloaded, ReportSectionType.BILL_OF_MATERIALS, analyzed);
+    }
+
+    @Test
+    public void testOtherFilesLeftAlone() throws Exception {
+	File cacheDir = tempFolder.newFolder("cache");
+	File otherReport = writeFile(new File(cacheDir, "report.html"));
+	File otherPart = writeFile(new File(cacheDir, "download.part"));
+	File otherDir = new File(cacheDir, "reports.cache.dir.html");
+	assertTrue(otherDir.mkdir());
+
+	ReportCache cache = new ReportCache(cacheDir, REPORT_SIZE);
+	assertEquals(0, cache.getReportCount());
+	putReport(cache, ReportSectionType.SUMMARY, new Date(1000L));
+	putReport(cache, ReportSectionType.BILL_OF_MATERIALS, new Date(1000L));
+	cache.clear();
+
+	assertEquals(0, cache.getReportCount());
+	assertTrue(otherReport.isFile());
+	assertTrue(otherPart.isFile());
+	assertTrue(otherDir.isDirectory());
+	assertEquals(3, cacheDir.list().length);
+
+	// A download left over from an earlier run is deleted
+	File leftOver = writeFile(new File(cacheDir, "reports.cache.123.part"));
+	new ReportCache(cacheDir, REPORT_SIZE);
+	assertTrue(!leftOver.exists());
+	assertTrue(otherPart.isFile());
+    }
+
+    private void putReport(ReportCache cache, ReportSectionType sectionType,
+	    Date analyzed) throws IOException {
+	File content = writeFile(tempFolder.newFile(), sectionType.name());
+	LineNumberReader reader = cache.put(PROJECT_ID, sectionType,
+		analyzed, new DataHandler(new FileDataSource(content)));
+	try {
+	    assertEquals(sectionType.name(), reader.readLine());
+	} finally {
+	    reader.close();
+	}
+    }
+
+    private void assertReport(ReportCache cache,
+	    ReportSectionType sectionType, Date analyzed) throws IOException {
+	LineNumberReader reader = cache.open(PROJECT_ID, sectionType, analyzed);
+	assertNotNull(reader);
+	try {
+	    assertEquals(sectionType.name(), reader.readLine());
+	} finally {
+	    reader.close();
+	}
+    }
+
+    private File findFile(File cacheDir, ReportSectionType sectionType) {
+	for (File file : cacheDir.listFiles()) {
+	    if (file.getName().contains("#" + sectionType.name() + "#")) {
+		return file;
+	    }
+	}
+	throw new AssertionError("No cached " + sectionType + " report");
+    }
+
+    private File writeFile(File file) throws IOException {
+	return writeFile(file, file.getName());
+    }
+
+    /**
+     * Write a file of REPORT_SIZE bytes, starting with the given line.
+     */
+    private File writeFile(File file, String firstLine) throws IOException {
+	byte[] content = new byte[REPORT_SIZE];
+	Arrays.fill(content, (byte) ' ');
+	byte[] line = (firstLine + "\n").getBytes("UTF-8");
+	System.arraycopy(line, 0, content, 0, line.length);
+	FileOutputStream os = new FileOutputStream(file);
+	try {
+	    os.write(content);
+	} finally {
+	    os.close();
+	}
+	return file;
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (C) 2015 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version 2 only
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License version 2
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *******************************************************************************/
+package soleng.framework.standard.protex.report;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import com.blackducksoftware.tools.commonframework.connector.protex.report.AdHocParserProtex6;
+import com.blackducksoftware.tools.commonframework.connector.protex.report.ReportRowHandler;
+import com.blackducksoftware.tools.commonframework.connector.protex.report.StreamingAdHocParser;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.AdHocElement;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.HocElement;
+
+/**
+ * Makes sure the streaming parser produces the same rows as the Jsoup-based
+ * parser for saved Protex 6 reports.
+ *
+ */
+public class StreamingAdHocParserTest {
+    private static final String SAVED_REPORT_DIR = "src/test/resources/savedreports/protex6";
+
+    @Test
+    public void testNonConformingSection() throws Exception {
+	compare("01_summary.html", 0);
+    }
+
+    @Test
+    public void testConformingSection() throws Exception {
+	compare("06_bom.html", 0);
+	compare("11_identifiedFiles.html", 0);
+    }
+
+    @Test
+    public void testSecondSection() throws Exception {
+	compare("02_codeMatchesPendingId.html", 1);
+    }
+
+    private void compare(String htmlFilename, int sectionIndex)
+	    throws Exception {
+	List<AdHocElement> expectedRows = parseWithJsoup(htmlFilename,
+		sectionIndex);
+
+	final List<AdHocElement> streamedRows = new ArrayList<AdHocElement>();
+	LineNumberReader lnr = openReport(htmlFilename);
+	try {
+	    StreamingAdHocParser<AdHocElement> parser = new StreamingAdHocParser<AdHocElement>();
+	    int rowCount = parser.parseRows(lnr, false, AdHocElement.class,
+		    sectionIndex, new ReportRowHandler<AdHocElement>() {
+			@Override
+			public void handleRow(AdHocElement row) {
+			    streamedRows.add(row);
+			}
+		    });
+	    assertEquals(streamedRows.size(), rowCount);
+	} finally {
+	    lnr.close();
+	}
+
+	assertEquals(expectedRows.size(), streamedRows.size());
+	for (int i = 0; i < expectedRows.size(); i++) {
+	    AdHocElement expectedRow = expectedRows.get(i);
+	    AdHocElement streamedRow = streamedRows.get(i);
+	    assertEquals(expectedRow.getPairKeys(), streamedRow.getPairKeys());
+	    for (String key : expectedRow.getPairKeys()) {
+		assertEquals(expectedRow.getValue(key),
+			streamedRow.getValue(key));
+	    }
+	}
+    }
+
+    private List<AdHocElement> parseWithJsoup(String htmlFilename,
+	    int sectionIndex) throws Exception {
+	StringBuffer buf = new StringBuffer();
+	LineNumberReader lnr = openReport(htmlFilename);
+	try {
+	    String line;
+	    while ((line = lnr.readLine()) != null) {
+		buf.append(line);
+	    }
+	} finally {
+	    lnr.close();
+	}
+	Document doc = Jsoup.parseBodyFragment("<tbody><table class='reportTable'>"
+		+ buf.toString() + "</table></tbody>");
+	AdHocParserProtex6<AdHocElement> parser = new AdHocParserProtex6<AdHocElement>();
+	HocElement header = parser.parseHeadersFromDoc(doc, sectionIndex);
+	return parser.parseRows(doc, header, false, AdHocElement.class,
+		sectionIndex);
+    }
+
+    private LineNumberReader openReport(String htmlFilename) throws Exception {
+	LineNumberReader lnr = new LineNumberReader(new InputStreamReader(
+		new FileInputStream(SAVED_REPORT_DIR + "/" + htmlFilename),
+		"UTF-8"));
+	lnr.readLine(); // ReportUtils skips the first line too
+	return lnr;
+    }
+}
@@ -17,13 +17,19 @@
  *******************************************************************************/
 package soleng.framework.standard.protex.report.template;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
 import java.io.OutputStream;
 import java.util.Properties;
 
@@ -48,10 +54,13 @@ import com.blackducksoftware.sdk.protex.report.ReportSectionType;
 import com.blackducksoftware.sdk.protex.report.ReportTemplateRequest;
 import com.blackducksoftware.tools.commonframework.connector.protex.ProtexAPIWrapper;
 import com.blackducksoftware.tools.commonframework.connector.protex.ProtexServerWrapper;
+import com.blackducksoftware.tools.commonframework.connector.protex.report.ReportRowHandler;
 import com.blackducksoftware.tools.commonframework.connector.protex.report.ReportUtils;
+import com.blackducksoftware.tools.commonframework.connector.protex.report.StreamingAdHocParser;
 import com.blackducksoftware.tools.commonframework.core.config.ConfigurationManager;
 import com.blackducksoftware.tools.commonframework.standard.common.ProjectPojo;
 import com.blackducksoftware.tools.commonframework.standard.protex.ProtexProjectPojo;
+import com.blackducksoftware.tools.commonframework.standard.protex.report.AdHocElement;
 import com.blackducksoftware.tools.commonframework.test.TestProtexConfigurationManager;
 import com.blackducksoftware.tools.commonframework.test.TestUtils;
 
@@ -121,12 +130,101 @@ public class ReportUtilsTest {
     @Test
     public void testProtex6() throws Exception {
 	test(MOCK_PROTEX6_VERSION_STRING, TEMPLATE_FILE_PROTEX6,
-		PROTEX6_HTML_DIR, EXPECTED_REPORT_PROTEX6, PROJECT_NAME_PROTEX6);
+		PROTEX6_HTML_DIR, EXPECTED_REPORT_PROTEX6, PROJECT_NAME_PROTEX6,
+		new ReportUtils(), 1);
+    }
+
+    /**
+     * Test report generation from Protex 6 report HTML, fetching several
+     * sections at a time. The report must be the same as when the sections
+     * are fetched one after the other.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testProtex6ConcurrentSections() throws Exception {
+	test(MOCK_PROTEX6_VERSION_STRING, TEMPLATE_FILE_PROTEX6,
+		PROTEX6_HTML_DIR, EXPECTED_REPORT_PROTEX6, PROJECT_NAME_PROTEX6,
+		new ReportUtils(), 4);
+    }
+
+    /**
+     * Test report generation from Protex 6 report HTML into a streaming
+     * workbook, with a row window smaller than the larger sections so that
+     * rows are flushed to disk. The report must be the same as when the
+     * workbook is built in memory.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testProtex6StreamingWorkbook() throws Exception {
+	ReportUtils reportUtils = new ReportUtils();
+	reportUtils.setStreamingRowWindow(5);
+	test(MOCK_PROTEX6_VERSION_STRING, TEMPLATE_FILE_PROTEX6,
+		PROTEX6_HTML_DIR, EXPECTED_REPORT_PROTEX6, PROJECT_NAME_PROTEX6,
+		reportUtils, 1);
+    }
+
+    /**
+     * Test fetching a Protex 6 report with a single request. The saved
+     * sections are concatenated into one report; some of them start with a
+     * copy of the Analysis Summary table, and some have titles that differ
+     * from their section type. Each table must end up in its own sheet.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testProtex6SingleRequest() throws Exception {
+	String htmlDir = PROTEX6_HTML_DIR;
+	File reportFile = File.createTempFile("singleRequestReport", ".html");
+	reportFile.deleteOnExit();
+	concatenateFiles(reportFile, htmlDir + "/01_summary.html", htmlDir
+		+ "/05_analysisSummary.html", htmlDir + "/06_bom.html",
+		htmlDir + "/12_excludedComponents.html", htmlDir
+			+ "/20_fileDiscoveryPatterns.html", htmlDir
+			+ "/33_licenseConflicts.html");
+
+	ProtexSystemInformation protexInfo = new ProtexSystemInformation();
+	protexInfo.setBdsServerLibraryVersion(MOCK_PROTEX6_VERSION_STRING);
+	when(mockPolicyApi.getSystemInformation()).thenReturn(protexInfo);
+	ProjectPojo expectedPojo = new ProtexProjectPojo(PROTEX_PROJECT_ID,
+		PROJECT_NAME_PROTEX6);
+	when(mockProtexServerWrapper.getProjectByName(PROJECT_NAME_PROTEX6))
+		.thenReturn(expectedPojo);
+
+	Report report = new Report();
+	report.setFileContent(new DataHandler(new FileDataSource(reportFile)));
+	when(
+		mockReportApi.generateAdHocProjectReport(eq(PROTEX_PROJECT_ID),
+			argThat(new IsRequestForSeveralSections()),
+			eq(ReportFormat.HTML))).thenReturn(report);
+
+	ReportUtils reportUtils = new ReportUtils();
+	Workbook wb = reportUtils.getReportInSingleRequest(
+		mockProtexServerWrapper, PROJECT_NAME_PROTEX6, new File(
+			TEMPLATE_FILE_PROTEX6),
+		initConfig(SERVER_NAME_PROTEX6));
+
+	assertSheetRowCount(wb, "SUMMARY", htmlDir + "/01_summary.html", 0);
+	assertSheetRowCount(wb, "ANALYSIS_SUMMARY", htmlDir
+		+ "/05_analysisSummary.html", 0);
+	assertSheetRowCount(wb, "BILL_OF_MATERIALS", htmlDir + "/06_bom.html",
+		0);
+	assertSheetRowCount(wb, "Excluded_Components", htmlDir
+		+ "/12_excludedComponents.html", 1);
+	assertSheetRowCount(wb, "File_Discovery_Patterns", htmlDir
+		+ "/20_fileDiscoveryPatterns.html", 1);
+	assertSheetRowCount(wb, "License_Conflicts", htmlDir
+		+ "/33_licenseConflicts.html", 1);
+	// Sections that are not in the report must stay empty
+	assertEquals(0, wb.getSheet("POTENTIAL_BILL_OF_MATERIALS")
+		.getLastRowNum());
+	assertEquals(0, wb.getSheet("Obligations").getLastRowNum());
     }
 
     private void test(String protexVersion, String templateFilename,
-	    String htmlDir, String expectedReportFilename, String projectName)
-	    throws Exception {
+	    String htmlDir, String expectedReportFilename, String projectName,
+	    ReportUtils reportUtils, int sectionThreads) throws Exception {
 
 	// Mock the Protex server version
 	ProtexSystemInformation protexInfo = new ProtexSystemInformation();
@@ -221,15 +319,13 @@ public class ReportUtilsTest {
 	// The test: Use ReportUtils to generate report
 	File templateFile = new File(templateFilename);
 	ConfigurationManager config = initConfig(SERVER_NAME_PROTEX6);
-	ReportUtils reportUtils = new ReportUtils();
 	Workbook wb = reportUtils.getReportSectionBySection(
-		mockProtexServerWrapper, projectName, templateFile, config);
+		mockProtexServerWrapper, projectName, templateFile, config,
+		sectionThreads);
 
 	// Write the generated report to a file
 	String reportFilename = TestUtils.getTempReportFilePath();
-	OutputStream os = new FileOutputStream(reportFilename);
-	wb.write(os);
-	os.close();
+	ReportUtils.writeWorkbook(wb, new File(reportFilename));
 
 	// Compare the generated file to the expected file (generated/saved
 	// earlier)
@@ -254,6 +350,54 @@ public class ReportUtilsTest {
 
     }
 
+    private static void concatenateFiles(File outputFile,
+	    String... inputFilenames) throws IOException {
+	OutputStream os = new FileOutputStream(outputFile);
+	try {
+	    byte[] buffer = new byte[8192];
+	    for (String inputFilename : inputFilenames) {
+		InputStream is = new FileInputStream(SAVED_REPORT_DIR + "/"
+			+ inputFilename);
+		try {
+		    int len;
+		    while ((len = is.read(buffer)) > 0) {
+			os.write(buffer, 0, len);
+		    }
+		} finally {
+		    is.close();
+		}
+	    }
+	} finally {
+	    os.close();
+	}
+    }
+
+    /**
+     * Check that a sheet holds as many rows (below its header) as the given
+     * table of a saved report section.
+     */
+    private static void assertSheetRowCount(Workbook wb, String sheetName,
+	    String htmlFilename, int tableIndex) throws Exception {
+	LineNumberReader lnr = new LineNumberReader(new InputStreamReader(
+		new FileInputStream(SAVED_REPORT_DIR + "/" + htmlFilename),
+		"UTF-8"));
+	int expectedRowCount;
+	try {
+	    lnr.readLine();
+	    expectedRowCount = new StreamingAdHocParser<AdHocElement>()
+		    .parseRows(lnr, false, AdHocElement.class, tableIndex,
+			    new ReportRowHandler<AdHocElement>() {
+				@Override
+				public void handleRow(AdHocElement row) {
+				}
+			    });
+	} finally {
+	    lnr.close();
+	}
+	assertEquals(sheetName, expectedRowCount, wb.getSheet(sheetName)
+		.getLastRowNum());
+    }
+
     private static ConfigurationManager initConfig(String protexServerName) {
 	Properties props = new Properties();
 	props.setProperty("protex.server.name", getUrl(protexServerName));
@@ -299,4 +443,15 @@ public class ReportUtilsTest {
 	}
     }
 
+    /**
+     * Matches requests for more than one report section.
+     */
+    class IsRequestForSeveralSections extends
+	    ArgumentMatcher<ReportTemplateRequest> {
+	@Override
+	public boolean matches(Object request) {
+	    return ((ReportTemplateRequest) request).getSections().size() > 1;
+	}
+    }
+
 }